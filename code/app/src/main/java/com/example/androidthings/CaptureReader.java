@@ -0,0 +1,85 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.view.Surface;
+
+/**
+ * An {@link ImageReader} that can be retired while its images are still in the pipeline. Closing
+ * a reader makes the planes of its images unreadable, so a retired reader is only closed once the
+ * last of its images has been released.
+ */
+class CaptureReader {
+
+  /** Receives the images of a reader. */
+  interface Listener {
+
+    void onImageAvailable(CaptureReader reader);
+  }
+
+  private final ImageReader reader;
+  private int openImages;
+  private boolean retired;
+
+  CaptureReader(int width, int height, int maxImages, Listener listener, Handler handler) {
+    reader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, maxImages);
+    reader.setOnImageAvailableListener(r -> listener.onImageAvailable(this), handler);
+  }
+
+  Surface getSurface() {
+    return reader.getSurface();
+  }
+
+  /**
+   * Returns the latest image, or null if there is none or the reader is retired. Every image
+   * returned must be handed back to {@link #release}.
+   */
+  synchronized Image acquireLatestImage() {
+    if (retired) {
+      return null;
+    }
+    Image image = reader.acquireLatestImage();
+    if (image != null) {
+      openImages++;
+    }
+    return image;
+  }
+
+  /** Closes an image acquired from this reader. */
+  synchronized void release(Image image) {
+    image.close();
+    openImages--;
+    if (retired && openImages == 0) {
+      reader.close();
+    }
+  }
+
+  /** Stops acquiring images and closes the reader once its images have been released. */
+  synchronized void retire() {
+    if (retired) {
+      return;
+    }
+    retired = true;
+    if (openImages == 0) {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * HSV to RGB conversions in fixed-point integer math, without allocation, that produce the same
+ * colors as {@link android.graphics.Color#HSVToColor(int, float[])} and
+ * {@link android.graphics.Color#colorToHSV(int, float[])} to within one step of a color channel.
+ * Depends on nothing from Android, so it also runs on a plain JVM.
+ *
+ * <p>Saturation and value are fixed-point numbers from 0 to {@link #ONE}. Hue is a fixed-point
+ * number of sixths of the color wheel, from 0 to {@link #HUE_CYCLE}; hues outside of it are red.
+ */
+public final class FixedPointColor {
+
+  /** Fixed-point 1 for saturation and value, and one sixth of the color wheel for hue. */
+  public static final int ONE = 1 << 16;
+  /** Fixed-point hue of a full turn of the color wheel. */
+  public static final int HUE_CYCLE = 6 * ONE;
+
+  private static final int SHIFT = 16;
+  private static final int MAX_CHANNEL = 255;
+  // Saturations below this are gray, as in Color.HSVToColor.
+  private static final int NEARLY_ZERO_SATURATION = ONE >> 12;
+  private static final float DEGREES_PER_SIXTH = 60f;
+
+  private FixedPointColor() {}
+
+  /**
+   * Converts a color given as in {@link android.graphics.Color#HSVToColor(int, float[])}: hue in
+   * degrees from 0 to 360, and saturation and value from 0 to 1.
+   */
+  public static int hsvToColor(int alpha, float hue, float saturation, float value) {
+    return hsvToColor(alpha, toFixedHue(hue), toFixed(saturation), toFixed(value));
+  }
+
+  /** Converts a color given in fixed-point hue, saturation and value. */
+  public static int hsvToColor(int alpha, int hue, int saturation, int value) {
+    int s = clamp(saturation, 0, ONE);
+    long v = clamp(value, 0, ONE);
+    int valueChannel = (int) ((v * MAX_CHANNEL + (ONE >> 1)) >> SHIFT);
+    if (s < NEARLY_ZERO_SATURATION) {
+      return argb(alpha, valueChannel, valueChannel, valueChannel);
+    }
+    if (hue < 0 || hue >= HUE_CYCLE) {
+      hue = 0;
+    }
+    int sextant = hue >> SHIFT;
+    long f = hue & (ONE - 1);
+    long oneSquared = (long) ONE * ONE;
+    long v255 = v * MAX_CHANNEL;
+    // (1 - s) * v, (1 - s * f) * v and (1 - s * (1 - f)) * v, rounded to a channel.
+    int p = (int) ((v255 * (ONE - s) + (1L << (2 * SHIFT - 1))) >> (2 * SHIFT));
+    int q = (int) ((v255 * (oneSquared - s * f) + (1L << (3 * SHIFT - 1))) >> (3 * SHIFT));
+    int t =
+        (int) ((v255 * (oneSquared - s * (ONE - f)) + (1L << (3 * SHIFT - 1))) >> (3 * SHIFT));
+    switch (sextant) {
+      case 0:
+        return argb(alpha, valueChannel, t, p);
+      case 1:
+        return argb(alpha, q, valueChannel, p);
+      case 2:
+        return argb(alpha, p, valueChannel, t);
+      case 3:
+        return argb(alpha, p, q, valueChannel);
+      case 4:
+        return argb(alpha, t, p, valueChannel);
+      default:
+        return argb(alpha, valueChannel, p, q);
+    }
+  }
+
+  /** Returns the hue of the color in degrees, from 0 to 360. */
+  public static float hue(int color) {
+    int r = red(color);
+    int g = green(color);
+    int b = blue(color);
+    int max = Math.max(r, Math.max(g, b));
+    int delta = max - Math.min(r, Math.min(g, b));
+    if (delta == 0) {
+      return 0f;
+    }
+    float h;
+    if (r == max) {
+      h = (g - b) / (float) delta;
+    } else if (g == max) {
+      h = 2 + (b - r) / (float) delta;
+    } else {
+      h = 4 + (r - g) / (float) delta;
+    }
+    h *= DEGREES_PER_SIXTH;
+    return h < 0 ? h + 360f : h;
+  }
+
+  /** Returns the saturation of the color, from 0 to 1. */
+  public static float saturation(int color) {
+    int r = red(color);
+    int g = green(color);
+    int b = blue(color);
+    int max = Math.max(r, Math.max(g, b));
+    if (max == 0) {
+      return 0f;
+    }
+    return (max - Math.min(r, Math.min(g, b))) / (float) max;
+  }
+
+  /** Returns the value of the color, from 0 to 1. */
+  public static float value(int color) {
+    return Math.max(red(color), Math.max(green(color), blue(color))) / (float) MAX_CHANNEL;
+  }
+
+  /** Converts a saturation or value from 0 to 1 to fixed point. */
+  public static int toFixed(float fraction) {
+    return (int) (clamp(fraction, 0f, 1f) * ONE + .5f);
+  }
+
+  /** Converts a hue in degrees to fixed point; hues outside of 0 to 360 become red. */
+  public static int toFixedHue(float degrees) {
+    if (!(degrees >= 0 && degrees < 360f)) {
+      return 0;
+    }
+    return Math.min(HUE_CYCLE - 1, (int) (degrees * (ONE / DEGREES_PER_SIXTH) + .5f));
+  }
+
+  private static int argb(int alpha, int red, int green, int blue) {
+    return (alpha << 24) | (red << 16) | (green << 8) | blue;
+  }
+
+  private static int red(int color) {
+    return (color >> 16) & 0xFF;
+  }
+
+  private static int green(int color) {
+    return (color >> 8) & 0xFF;
+  }
+
+  private static int blue(int color) {
+    return color & 0xFF;
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return Math.max(min, Math.min(max, value));
+  }
+
+  private static float clamp(float value, float min, float max) {
+    return Math.max(min, Math.min(max, value));
+  }
+}
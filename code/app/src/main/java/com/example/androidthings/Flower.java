@@ -16,11 +16,14 @@ package com.example.androidthings;
  * limitations under the License.
  */
 
-import android.graphics.Color;
 import android.support.annotation.IntDef;
 import android.util.Log;
+import com.example.androidthings.metrics.StageLatencies;
+import com.example.androidthings.metrics.StageLatencies.Stage;
 import com.example.androidthings.sequences.ExpressionSequence;
 import com.example.androidthings.sequences.IdleSequence;
+import com.example.androidthings.sequences.KeyframeLibrary;
+import com.example.androidthings.sequences.KeyframeSequence;
 import com.example.androidthings.sequences.RainbowSequence;
 import com.example.androidthings.sequences.Sequence;
 import com.google.android.things.contrib.driver.pwmservo.Servo;
@@ -37,16 +40,21 @@ public class Flower {
   private static final float YELLOW_HUE = 40f;
   private static final float PINK_HUE = 314f;
   private static final int DEFAULT_MAX_ANGLE = 50;
+  // The DS3218 servo's dead band is 3us of its 2000us pulse range over 180 degrees.
+  private static final float SERVO_RESOLUTION_DEGREES = .3f;
+  private static final float SERVO_MAX_SPEED = 120f; // Degrees per second.
+  private static final float SERVO_MAX_ACCELERATION = 600f; // Degrees per second squared.
 
-  private final Servo motorController;
-  private final FlowerLEDController ledController;
+  private final ServoMotionPlanner motionPlanner =
+      new ServoMotionPlanner(
+          SERVO_RESOLUTION_DEGREES, SERVO_MAX_SPEED, SERVO_MAX_ACCELERATION);
+  private final OutputCompositor output;
 
   private int maxAngle;
 
   private float hue;
   private float saturation;
   private float brightness;
-  private float opening = 0f;
 
   private boolean running = true;
 
@@ -71,15 +79,34 @@ public class Flower {
     int WINK = 4;
   }
 
+  // The sequence of each state, indexed by state, reused on every transition to that state.
+  private final Sequence[] stateSequences = new Sequence[State.WINK + 1];
+
   private Sequence sequence;
   private @State int currentState = State.UNDEFINED;
   private @State int underlyingState;
 
   Flower(Servo motorController, FlowerLEDController ledController) throws IOException {
-    this.motorController = motorController;
-    this.ledController = ledController;
+    output = new OutputCompositor(ledController, motorController, motionPlanner);
     maxAngle = DEFAULT_MAX_ANGLE;
     setOpening(1f);
+    output.start();
+    Sequence rainbowSequence = new RainbowSequence(this, .75f, this::onSequenceCompleted);
+    stateSequences[State.IDLE] = new IdleSequence(this, this::onSequenceCompleted);
+    stateSequences[State.DETECTING] = rainbowSequence;
+    stateSequences[State.INDIFFERENCE] = rainbowSequence;
+    stateSequences[State.SMILE] =
+        new ExpressionSequence(this, YELLOW_HUE, 1f, this::onSequenceCompleted);
+    stateSequences[State.WINK] =
+        new ExpressionSequence(this, PINK_HUE, .25f, this::onSequenceCompleted);
+  }
+
+  /**
+   * Plays the keyframe animation of the library for the state from the next transition to the
+   * state on. The animation is loaded in the background, if no other flower loaded it before.
+   */
+  synchronized void setKeyframeSequence(@State int state, KeyframeLibrary library, String name) {
+    stateSequences[state] = new KeyframeSequence(this, library, name, this::onSequenceCompleted);
   }
 
   /** Activates and deactivates configuration mode. */
@@ -93,40 +120,47 @@ public class Flower {
   }
 
   /** Sets the hsv values of the flower. */
-  public void setHSV(float hue, float saturation, float brightness) throws IOException {
+  public void setHSV(float hue, float saturation, float brightness) {
     this.hue = ensureInRange(hue, 0, 359);
     this.saturation = ensureInRange(saturation, (float) .5, 1);
     this.brightness = ensureInRange(brightness, 0, 1);
-    ledController.setFlowerHue(this.hue, this.saturation, this.brightness);
+    output.setColor(
+        FixedPointColor.hsvToColor(0, this.hue, this.saturation, this.brightness));
   }
 
-  /** Sets the LEDs of the flower. */
-  public void setLEDs(int[] colors) throws IOException {
-    float[] hsv = new float[3];
-    Color.colorToHSV(colors[0], hsv);
-    this.hue = hsv[0];
-    this.saturation = hsv[1];
-    this.brightness = hsv[2];
-    ledController.setFlowerLEDs(colors);
+  /** Sets the LEDs of the flower; they are shown on the next output tick. */
+  public void setLEDs(int[] colors) {
+    this.hue = FixedPointColor.hue(colors[0]);
+    this.saturation = FixedPointColor.saturation(colors[0]);
+    this.brightness = FixedPointColor.value(colors[0]);
+    output.setColors(colors);
   }
 
-  /** Sets how open the flower's petals are. */
-  public void setOpening(float opening) throws IOException {
-    setOpening(opening, false);
+  /**
+   * Sets how open the flower's petals should be. The petals move there over the following output
+   * ticks.
+   */
+  public void setOpening(float opening) {
+    setOpening(opening, SERVO_MAX_SPEED / maxAngle);
   }
 
-  /** Sets at what angle the flower shall be opened if force is true. */
-  private void setOpening(float opening, boolean force) throws IOException {
-    if (!force && Float.compare(opening, this.opening) == 0) {
-      return;
-    }
-    this.opening = ensureInRange(opening, 0, 1);
-    motorController.setAngle(maxAngle * this.opening);
+  /** Sets how open the petals should be and moves them no faster than openingsPerSecond. */
+  public void setOpening(float opening, float openingsPerSecond) {
+    output.setAngle(maxAngle * ensureInRange(opening, 0, 1), maxAngle * openingsPerSecond);
   }
 
-  /** Returns the angle the flower is currently opened to. */
+  /** Returns how open the flower's petals currently are. */
   public float getOpening() {
-    return this.opening;
+    synchronized (motionPlanner) {
+      return motionPlanner.getPosition() / maxAngle;
+    }
+  }
+
+  /** Returns how open the flower's petals should be. */
+  public float getTargetOpening() {
+    synchronized (motionPlanner) {
+      return motionPlanner.getTarget() / maxAngle;
+    }
   }
 
   /** Determines that the new angle is in the range that the flower can handle. */
@@ -136,7 +170,9 @@ public class Flower {
 
   /** Sets the current state of the flower. */
   synchronized void setState(@State int newState) {
+    long startNs = System.nanoTime();
     setState(newState, false);
+    StageLatencies.recordSince(Stage.SET_STATE, startNs);
   }
 
   /** Sets the current state of the flower and starts a new sequence depending on the state. */
@@ -169,27 +205,12 @@ public class Flower {
 
     try {
       clearCurrentSequence();
-      switch (newState) {
-        case State.DETECTING:
-          sequence = new RainbowSequence(this, .75f, this::onSequenceCompleted);
-          break;
-        case State.INDIFFERENCE:
-          sequence = new RainbowSequence(this, .75f, this::onSequenceCompleted);
-          break;
-        case State.SMILE:
-          sequence = new ExpressionSequence(this, YELLOW_HUE, 1f, this::onSequenceCompleted);
-          break;
-        case State.WINK:
-          sequence = new ExpressionSequence(this, PINK_HUE, .25f, this::onSequenceCompleted);
-          break;
-        case State.IDLE:
-          sequence = new IdleSequence(this, opening, this::onSequenceCompleted);
-          break;
-        case State.UNDEFINED:
-          sequence = new IdleSequence(this, opening, this::onSequenceCompleted);
-          break;
-        default:
-          Log.e(TAG, "Unrecognized state." + newState);
+      if (newState == State.UNDEFINED) {
+        sequence = stateSequences[State.IDLE];
+      } else if (newState >= 0 && newState < stateSequences.length) {
+        sequence = stateSequences[newState];
+      } else {
+        Log.e(TAG, "Unrecognized state." + newState);
       }
       sequence.start();
     } catch (Exception e) {
@@ -216,5 +237,6 @@ public class Flower {
   synchronized void destroy() throws IOException {
     running = false;
     clearCurrentSequence();
+    output.stop();
   }
 }
\ No newline at end of file
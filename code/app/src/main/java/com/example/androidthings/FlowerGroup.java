@@ -0,0 +1,150 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.support.annotation.IntDef;
+import com.example.androidthings.Flower.State;
+import com.example.androidthings.vision.Face;
+import com.example.androidthings.vision.PriorityArbiter;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Takes the flower's states once and fans them out to a group of flowers, each with its own servo
+ * and LEDs. Every flower follows the IDLE and DETECTING states; the policy decides which flowers
+ * show the priority face's expression.
+ */
+public class FlowerGroup implements PriorityArbiter.StateListener {
+
+  /** Decides which flowers show an expression. */
+  @IntDef({
+      Policy.MIRROR,
+      Policy.ROUND_ROBIN,
+      Policy.ZONE,
+  })
+  @Retention(RetentionPolicy.SOURCE)
+  public @interface Policy {
+    // Every flower shows the expression.
+    int MIRROR = 0;
+    // Each expression goes to one flower, and the next expression goes to the next flower.
+    int ROUND_ROBIN = 1;
+    // The flowers split the view into vertical zones, left to right, and the flower whose zone
+    // holds the face's center shows the expression. The cameras are taken to be side by side,
+    // left to right in the order of their indices, so the view is their images next to each
+    // other.
+    int ZONE = 2;
+  }
+
+  private final Flower[] flowers;
+  private final @Policy int policy;
+  private final int cameraCount;
+  private final int imageWidth;
+
+  // The expression being shown by ROUND_ROBIN, and the face and flower showing it.
+  private @State int expression = State.DETECTING;
+  private int expressionFaceId;
+  private int expressionFlower;
+
+  /**
+   * @param cameraCount number of cameras whose images ZONE puts side by side.
+   * @param imageWidth width of each camera's image, which the faces' positions are in.
+   */
+  public FlowerGroup(Flower[] flowers, @Policy int policy, int cameraCount, int imageWidth) {
+    this.flowers = flowers.clone();
+    this.policy = policy;
+    this.cameraCount = cameraCount;
+    this.imageWidth = imageWidth;
+    expressionFlower = flowers.length - 1;
+  }
+
+  /** Returns the number of flowers in the group. */
+  public int size() {
+    return flowers.length;
+  }
+
+  /** Sets every flower to the state. */
+  @Override
+  public synchronized void onStateChanged(@State int state) {
+    for (Flower flower : flowers) {
+      flower.setState(state);
+    }
+  }
+
+  @Override
+  public synchronized void onDecision(
+      @State int state, @State int expression, int priorityCamera, Face priorityFace) {
+    onStateChanged(state);
+    if (expression == State.DETECTING || priorityFace == null) {
+      this.expression = State.DETECTING;
+      return;
+    }
+    switch (policy) {
+      case Policy.MIRROR:
+        onStateChanged(expression);
+        break;
+      case Policy.ROUND_ROBIN:
+        if (expression != this.expression || priorityFace.getTrackingId() != expressionFaceId) {
+          expressionFlower = (expressionFlower + 1) % flowers.length;
+          this.expression = expression;
+          expressionFaceId = priorityFace.getTrackingId();
+        }
+        flowers[expressionFlower].setState(expression);
+        break;
+      case Policy.ZONE:
+        flowers[getZone(priorityCamera, priorityFace)].setState(expression);
+        break;
+    }
+  }
+
+  private int getZone(int camera, Face face) {
+    long x = (long) camera * imageWidth + face.getCenterX();
+    int zone = (int) (x * flowers.length / ((long) cameraCount * imageWidth));
+    return Math.max(0, Math.min(flowers.length - 1, zone));
+  }
+
+  /** Sets configuration mode on every flower. */
+  public void setIsInConfigMode(boolean inConfigMode) {
+    for (Flower flower : flowers) {
+      flower.setIsInConfigMode(inConfigMode);
+    }
+  }
+
+  /** Returns configuration mode flag. */
+  public boolean getIsInConfigMode() {
+    return flowers.length > 0 && flowers[0].getIsInConfigMode();
+  }
+
+  /** Destroys every flower, even if destroying one of them fails. */
+  void destroy() throws IOException {
+    IOException error = null;
+    for (Flower flower : flowers) {
+      try {
+        flower.destroy();
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        } else {
+          error.addSuppressed(e);
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+}
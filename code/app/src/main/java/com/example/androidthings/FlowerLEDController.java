@@ -16,39 +16,78 @@ package com.example.androidthings;
  * limitations under the License.
  */
 
-import android.graphics.Color;
+import android.util.Log;
+import com.example.androidthings.metrics.StageLatencies;
+import com.example.androidthings.metrics.StageLatencies.Stage;
 import com.google.android.things.contrib.driver.apa102.Apa102;
 import com.google.android.things.contrib.driver.apa102.Apa102.Mode;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
-/** This class controls the flower's LEDs. */
+/**
+ * This class controls the flower's LEDs. A frame identical to the last one written is skipped,
+ * unless the strip hasn't been written for FORCED_REFRESH_NS, in case it missed a write.
+ */
 public class FlowerLEDController {
+
+  private static final String TAG = FlowerLEDController.class.getSimpleName();
+
   public static final int LED_COUNT = 26;
   private static final int LED_BRIGHTNESS = 31;
   private static final Apa102.Mode LED_MODE = Mode.BGR;
   private Apa102 apa102;
-  private static final int[] ledArray = new int [LED_COUNT];
+  private static final String DEFAULT_SPI_BUS = "SPI0.0";
+  private static final long FORCED_REFRESH_NS = 1_000_000_000L;
+
+  // Writes sent to and skipped for the LED strips of all flowers.
+  private static final AtomicLong sentWrites = new AtomicLong();
+  private static final AtomicLong skippedWrites = new AtomicLong();
+  private int[] lastColors = new int[LED_COUNT];
+  private boolean hasLastColors;
+  private long lastWriteNs;
   FlowerLEDController() throws IOException {
-      apa102 = new Apa102("SPI0.0", LED_MODE);
-      apa102.setBrightness(LED_BRIGHTNESS);
+      this(DEFAULT_SPI_BUS);
   }
 
-  void setFlowerHue(float hue, float saturation, float brightness) throws IOException {
-    setFlowerLEDs(
-        generateSolidColorArrayForColor(hsvToColor(hue, saturation, brightness)));
+  /** Drives the LED strip on the given SPI bus. */
+  FlowerLEDController(String spiBus) throws IOException {
+      apa102 = new Apa102(spiBus, LED_MODE);
+      apa102.setBrightness(LED_BRIGHTNESS);
   }
 
   synchronized void setFlowerLEDs(int[] colors) throws IOException {
+    long startNs = System.nanoTime();
+    if (hasLastColors
+        && startNs - lastWriteNs < FORCED_REFRESH_NS
+        && Arrays.equals(colors, lastColors)) {
+      skippedWrites.incrementAndGet();
+      return;
+    }
+    hasLastColors = false;
     apa102.write(colors);
+    if (lastColors.length != colors.length) {
+      lastColors = new int[colors.length];
+    }
+    System.arraycopy(colors, 0, lastColors, 0, colors.length);
+    hasLastColors = true;
+    lastWriteNs = startNs;
+    sentWrites.incrementAndGet();
+    StageLatencies.recordSince(Stage.SET_LEDS, startNs);
+  }
+
+  /** Returns the number of frames written to the LED strips of all flowers. */
+  public static long getSentWriteCount() {
+    return sentWrites.get();
   }
 
-  private static int[] generateSolidColorArrayForColor(int color) {
-    Arrays.fill(ledArray, color);
-    return ledArray;
+  /** Returns the number of frames skipped because the LED strip already showed them. */
+  public static long getSkippedWriteCount() {
+    return skippedWrites.get();
   }
 
-  private static int hsvToColor(float hue, float saturation, float brightness) {
-    return Color.HSVToColor(0, new float[] {hue, saturation, brightness});
+  /** Logs how many frames were written to and skipped for the LED strips. */
+  public static void logWriteCounts() {
+    Log.i(TAG, "LED writes sent: " + sentWrites.get() + ", skipped: " + skippedWrites.get());
   }
 }
@@ -0,0 +1,122 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.util.Log;
+import com.example.androidthings.VideoProcessor.ReplayPacing;
+import com.example.androidthings.vision.FrameSource;
+import java.io.IOException;
+
+/**
+ * Feeds the frames of a recording or a fake camera into the pipeline in place of the camera, on a
+ * thread of its own. Frames are never dropped: the replayer waits for the pipeline instead, so
+ * replaying as fast as possible measures the pipeline's throughput.
+ */
+class FrameReplayer {
+
+  private static final String TAG = FrameReplayer.class.getSimpleName();
+
+  /** Where replayed frames go. */
+  interface Target {
+
+    /** Returns a free frame to read into, waiting until one is available. */
+    PipelineFrame obtainFrame() throws InterruptedException;
+
+    /** Hands a frame that holds a replayed image to the pipeline. */
+    void submitFrame(PipelineFrame frame) throws InterruptedException;
+
+    /** Returns a frame that wasn't used to the pool. */
+    void releaseFrame(PipelineFrame frame);
+
+    /** Called on the replay thread once the replay has ended. */
+    void onReplayFinished(FrameReplayer replayer);
+  }
+
+  private final FrameSource source;
+  private final @ReplayPacing int pacing;
+  private final Target target;
+  private final Thread thread;
+
+  FrameReplayer(FrameSource source, @ReplayPacing int pacing, Target target) {
+    this.source = source;
+    this.pacing = pacing;
+    this.target = target;
+    this.thread = new Thread(this::run, "replay");
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  /** Stops the replay. Frames already handed to the pipeline are still processed. */
+  void stop() {
+    thread.interrupt();
+  }
+
+  private void run() {
+    int frameCount = 0;
+    long startNs = System.nanoTime();
+    long firstTimestampNs = 0;
+    // The frame taken from the pool and not yet handed to the pipeline.
+    PipelineFrame frame = null;
+    try {
+      while (true) {
+        frame = target.obtainFrame();
+        if (!source.next(frame.yuv)) {
+          break;
+        }
+        if (frameCount == 0) {
+          firstTimestampNs = frame.yuv.getTimestampNs();
+        } else if (pacing == ReplayPacing.ORIGINAL) {
+          long delayNs =
+              (frame.yuv.getTimestampNs() - firstTimestampNs) - (System.nanoTime() - startNs);
+          if (delayNs > 0) {
+            Thread.sleep(delayNs / 1_000_000, (int) (delayNs % 1_000_000));
+          }
+        }
+        target.submitFrame(frame);
+        frame = null;
+        frameCount++;
+      }
+      long elapsedNs = System.nanoTime() - startNs;
+      Log.i(
+          TAG,
+          "Replayed "
+              + frameCount
+              + " frames in "
+              + elapsedNs / 1_000_000
+              + " ms ("
+              + (elapsedNs > 0 ? frameCount * 1_000_000_000L / elapsedNs : 0)
+              + " fps)");
+    } catch (InterruptedException e) {
+      Log.i(TAG, "Replay stopped after " + frameCount + " frames");
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to read frames", e);
+    } finally {
+      if (frame != null) {
+        frame.yuv.clear();
+        target.releaseFrame(frame);
+      }
+      try {
+        source.close();
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to close frame source", e);
+      }
+      target.onReplayFinished(this);
+    }
+  }
+}
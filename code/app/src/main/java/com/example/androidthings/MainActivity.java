@@ -24,14 +24,26 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Path.Direction;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
 import android.widget.ImageView;
+import com.example.androidthings.Flower.State;
+import com.example.androidthings.FlowerGroup.Policy;
+import com.example.androidthings.VideoProcessor.PreviewMode;
+import com.example.androidthings.VideoProcessor.ReplayPacing;
+import com.example.androidthings.metrics.StageLatencies;
+import com.example.androidthings.sequences.KeyframeLibrary;
+import com.example.androidthings.vision.PriorityArbiter;
 import com.google.android.things.contrib.driver.pwmservo.Servo;
 import com.google.firebase.FirebaseApp;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 /** Expression flower activity that starts the VideoProcessor, motor, and LEDs. */
 public class MainActivity extends Activity {
@@ -39,12 +51,24 @@ public class MainActivity extends Activity {
   private static final String TAG = MainActivity.class.getSimpleName();
 
   private static final int OVERLAY_RADIUS = 80;
-  private static final String SERVO_PIN = "PWM0";
+  // Servo pin and LED strip SPI bus of each flower; the flowers are ordered left to right.
+  private static final String[] SERVO_PINS = {"PWM0"};
+  private static final String[] LED_SPI_BUSES = {"SPI0.0"};
+  private static final @Policy int FLOWER_GROUP_POLICY = Policy.MIRROR;
+  // Keyframe animations in the assets, played instead of the built-in expression sequences.
+  private static final String KEYFRAMES_DIR = "sequences/";
+  private static final String SMILE_KEYFRAMES = "smile.keyframes";
+  private static final String WINK_KEYFRAMES = "wink.keyframes";
+  private static final String RECORDING_FILE_NAME = "camera.yuvr";
+  // Max number of cameras that watch the flower at once.
+  private static final int MAX_CAMERAS = 4;
+  // Processes the camera whose preview is shown; recording and replay apply to it.
   private VideoProcessor videoProcessor;
-  private FlowerLEDController ledController;
-  private Servo servo;
-  private Flower flower;
+  private VideoProcessor[] videoProcessors;
+  private FlowerGroup flowerGroup;
   private ImageView overlay;
+  private boolean isRecording;
+  private @PreviewMode int previewMode = PreviewMode.EVERY_FRAME;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -56,13 +80,38 @@ public class MainActivity extends Activity {
     overlay = findViewById(R.id.overlay);
     createOverlayDisplay();
 
+    KeyframeLibrary keyframes =
+        new KeyframeLibrary(
+            name ->
+                new InputStreamReader(
+                    getAssets().open(KEYFRAMES_DIR + name), StandardCharsets.UTF_8));
+    Flower[] flowers = new Flower[SERVO_PINS.length];
+    for (int i = 0; i < flowers.length; i++) {
+      flowers[i] = createFlower(SERVO_PINS[i], LED_SPI_BUSES[i]);
+      flowers[i].setKeyframeSequence(State.SMILE, keyframes, SMILE_KEYFRAMES);
+      flowers[i].setKeyframeSequence(State.WINK, keyframes, WINK_KEYFRAMES);
+    }
+    String[] cameraIds = getCameraIds();
+    flowerGroup =
+        new FlowerGroup(
+            flowers,
+            FLOWER_GROUP_POLICY,
+            Math.max(1, Math.min(cameraIds.length, MAX_CAMERAS)),
+            VideoProcessor.IMAGE_WIDTH);
+
+    startVideoProcessors(cameraIds);
+  }
+
+  private static Flower createFlower(String servoPin, String ledSpiBus) {
+    FlowerLEDController ledController;
     try {
-      ledController = new FlowerLEDController();
+      ledController = new FlowerLEDController(ledSpiBus);
     } catch (IOException e) {
       throw new RuntimeException("Couldn't set up led controller.", e);
     }
+    Servo servo;
     try {
-      servo = new Servo(SERVO_PIN);
+      servo = new Servo(servoPin);
       servo.setPulseDurationRange(0.5, 2.5); // According to the DS3218 servo spec.
       servo.setAngleRange(0, 180); // According to the DS3218 servo spec.
       servo.setEnabled(true);
@@ -72,13 +121,52 @@ public class MainActivity extends Activity {
     }
 
     try {
-      flower = new Flower(servo, ledController);
+      return new Flower(servo, ledController);
     } catch (IOException e) {
       throw new RuntimeException("Couldn't set up flower.", e);
     }
+  }
+
+  /** Returns the ids of the cameras, or none if they can't be listed. */
+  private String[] getCameraIds() {
+    try {
+      return ((CameraManager) getSystemService(CAMERA_SERVICE)).getCameraIdList();
+    } catch (CameraAccessException e) {
+      Log.e(TAG, "Unable to list cameras.", e);
+      return new String[0];
+    }
+  }
+
+  /**
+   * Starts a VideoProcessor for each camera, up to MAX_CAMERAS. The first camera's preview is
+   * shown, and the cameras share the cores and one priority face.
+   */
+  private void startVideoProcessors(String[] cameraIds) {
+    if (cameraIds.length <= 1) {
+      videoProcessor =
+          new VideoProcessor(flowerGroup, this, findViewById(R.id.imageView), getMainLooper());
+      videoProcessors = new VideoProcessor[] {videoProcessor};
+      return;
+    }
 
-    videoProcessor =
-        new VideoProcessor(flower, this, findViewById(R.id.imageView), getMainLooper());
+    int cameraCount = Math.min(cameraIds.length, MAX_CAMERAS);
+    int conversionWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / cameraCount);
+    PriorityArbiter priorityArbiter = new PriorityArbiter(cameraCount, flowerGroup);
+    flowerGroup.onStateChanged(State.IDLE);
+    videoProcessors = new VideoProcessor[cameraCount];
+    for (int i = 0; i < cameraCount; i++) {
+      videoProcessors[i] =
+          new VideoProcessor(
+              priorityArbiter,
+              i,
+              cameraIds[i],
+              this,
+              i == 0 ? findViewById(R.id.imageView) : null,
+              getMainLooper(),
+              conversionWorkers);
+    }
+    videoProcessor = videoProcessors[0];
+    Log.i(TAG, "Watching with " + cameraCount + " cameras.");
   }
 
   /** Draws the overlay for the configuration mode. */
@@ -104,28 +192,73 @@ public class MainActivity extends Activity {
 
   /**
    * Listens for a keyboard event to toggle configuration mode. When isInConfigMode = true, the
-   * servo will rotate to the max opening position, and the overlay display is shown.
+   * servo will rotate to the max opening position, and the overlay display is shown. H cycles the
+   * camera preview through every frame, a limited frame rate and headless. R toggles recording the
+   * camera, P replays the recording at its original pace and F replays it as fast as possible. L
+   * logs the latency percentiles of every stage and how many LED writes were skipped.
    */
   @Override
   public boolean onKeyUp(int keyCode, KeyEvent event) {
     switch (keyCode) {
       case KeyEvent.KEYCODE_SPACE:
-        boolean flag = flower.getIsInConfigMode();
+        boolean flag = flowerGroup.getIsInConfigMode();
         if (!flag) {
           overlay.setVisibility(View.VISIBLE);
         } else {
           overlay.setVisibility(View.INVISIBLE);
         }
-        flower.setIsInConfigMode(!flag);
+        flowerGroup.setIsInConfigMode(!flag);
+        break;
+      case KeyEvent.KEYCODE_H:
+        previewMode = (previewMode + 1) % 3;
+        videoProcessor.setPreviewMode(previewMode);
+        break;
+      case KeyEvent.KEYCODE_L:
+        StageLatencies.log();
+        FlowerLEDController.logWriteCounts();
+        break;
+      case KeyEvent.KEYCODE_R:
+        toggleRecording();
+        break;
+      case KeyEvent.KEYCODE_P:
+        replay(ReplayPacing.ORIGINAL);
+        break;
+      case KeyEvent.KEYCODE_F:
+        replay(ReplayPacing.AS_FAST_AS_POSSIBLE);
+        break;
     }
     return super.onKeyUp(keyCode, event);
   }
 
+  private void toggleRecording() {
+    if (isRecording) {
+      videoProcessor.stopRecording();
+      isRecording = false;
+      return;
+    }
+    try {
+      videoProcessor.startRecording(new File(getFilesDir(), RECORDING_FILE_NAME));
+      isRecording = true;
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to start recording.", e);
+    }
+  }
+
+  private void replay(@ReplayPacing int pacing) {
+    try {
+      videoProcessor.startReplay(new File(getFilesDir(), RECORDING_FILE_NAME), pacing);
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to replay recording.", e);
+    }
+  }
+
   @Override
   protected void onDestroy() {
-    videoProcessor.stop();
+    for (VideoProcessor processor : videoProcessors) {
+      processor.stop();
+    }
     try {
-      flower.destroy();
+      flowerGroup.destroy();
     } catch (IOException e) {
       Log.e(TAG, "Flower was unable to destroy.", e);
     }
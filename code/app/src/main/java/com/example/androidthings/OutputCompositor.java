@@ -0,0 +1,159 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.things.contrib.driver.pwmservo.Servo;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Composes the output of a flower: sequences write LED colors and the opening into a back frame,
+ * and on every tick one output thread, shared by all flowers, latches the back frame and flushes
+ * it to the LED strip and the servo. Writers only ever wait for a copy into the back frame, never
+ * for the hardware, and the hardware is written at a steady rate.
+ */
+final class OutputCompositor {
+
+  private static final String TAG = OutputCompositor.class.getSimpleName();
+  static final long TICK_MS = 20;
+
+  private static Handler outputHandler;
+
+  /** What a flower shows. */
+  private static final class Frame {
+    final int[] colors = new int[FlowerLEDController.LED_COUNT];
+    boolean hasColors;
+    float angle;
+    float maxSpeed;
+    boolean hasAngle;
+  }
+
+  private final FlowerLEDController ledController;
+  private final Servo motorController;
+  private final ServoMotionPlanner motionPlanner;
+  private final Runnable tick = this::tick;
+
+  private Frame back = new Frame();
+  private Frame front = new Frame();
+  private boolean running;
+  private long nextTickMs;
+
+  OutputCompositor(
+      FlowerLEDController ledController,
+      Servo motorController,
+      ServoMotionPlanner motionPlanner) {
+    this.ledController = ledController;
+    this.motorController = motorController;
+    this.motionPlanner = motionPlanner;
+  }
+
+  /** Returns the handler of the thread that flushes the output of every flower. */
+  private static synchronized Handler getOutputHandler() {
+    if (outputHandler == null) {
+      HandlerThread outputThread = new HandlerThread(TAG + "Thread");
+      outputThread.start();
+      outputHandler = new Handler(outputThread.getLooper());
+    }
+    return outputHandler;
+  }
+
+  /** Starts flushing frames on every tick. */
+  synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    nextTickMs = SystemClock.uptimeMillis();
+    getOutputHandler().postAtTime(tick, nextTickMs);
+  }
+
+  /** Stops flushing frames. Frames written after this are never shown. */
+  synchronized void stop() {
+    running = false;
+    getOutputHandler().removeCallbacks(tick);
+  }
+
+  /** Sets the colors of the LEDs, from the first LED on. */
+  synchronized void setColors(int[] colors) {
+    System.arraycopy(colors, 0, back.colors, 0, Math.min(colors.length, back.colors.length));
+    back.hasColors = true;
+  }
+
+  /** Sets every LED to the color. */
+  synchronized void setColor(int color) {
+    Arrays.fill(back.colors, color);
+    back.hasColors = true;
+  }
+
+  /** Sets the angle the servo moves towards, no faster than maxSpeed degrees per second. */
+  synchronized void setAngle(float angle, float maxSpeed) {
+    back.angle = angle;
+    back.maxSpeed = maxSpeed;
+    back.hasAngle = true;
+  }
+
+  /** Latches the back frame and flushes it to the hardware. */
+  private void tick() {
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      Frame latched = back;
+      back = front;
+      front = latched;
+      back.hasColors = false;
+      back.hasAngle = false;
+
+      long nowMs = SystemClock.uptimeMillis();
+      nextTickMs += TICK_MS;
+      if (nextTickMs <= nowMs) {
+        // Fell behind, for example while the hardware was slow. Skip the missed ticks.
+        nextTickMs = nowMs + TICK_MS;
+      }
+      getOutputHandler().postAtTime(tick, nextTickMs);
+    }
+
+    // Only this thread touches the front frame and the hardware.
+    try {
+      if (front.hasColors) {
+        ledController.setFlowerLEDs(front.colors);
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Couldn't write LEDs.", e);
+    }
+    try {
+      boolean write;
+      float angle;
+      synchronized (motionPlanner) {
+        if (front.hasAngle) {
+          motionPlanner.setTarget(front.angle, front.maxSpeed);
+        }
+        write = motionPlanner.update(System.nanoTime());
+        angle = motionPlanner.getAngle();
+      }
+      if (write) {
+        motorController.setAngle(angle);
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Couldn't move servo.", e);
+    }
+  }
+}
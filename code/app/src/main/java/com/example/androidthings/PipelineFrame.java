@@ -0,0 +1,123 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.media.Image;
+import com.example.androidthings.vision.Face;
+import com.example.androidthings.vision.FaceDetector;
+import com.example.androidthings.vision.Nv21Packer;
+import com.example.androidthings.vision.YuvFrame;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A camera frame as it moves through the pipeline. Frames and their buffers are pooled, so a frame
+ * must not be used after it has been returned to the pool.
+ */
+class PipelineFrame implements FaceDetector.Input {
+
+  // Identifies the frame; increases by one for every frame the pipeline accepts.
+  long id;
+  // Timestamp of the frame as reported by the camera.
+  long timestampNs;
+  // System.nanoTime() when the frame was captured.
+  long captureNs;
+
+  // The camera image, held open until the convert stage has read it, or null for replayed frames.
+  Image image;
+  // Whether the frame came from the camera rather than a replay.
+  boolean fromCamera;
+  // The reader the image was acquired from.
+  CaptureReader imageReader;
+  // The planes of the image or of the replayed frame.
+  final YuvFrame yuv = new YuvFrame();
+
+  // Ticket from the DetectionScheduler, or NO_TICKET if this frame is not detected.
+  long detectionTicket;
+  // Whether the detector reads nv21 or argb.
+  @VideoProcessor.DetectionInput int detectionInput;
+  byte[] nv21;
+  // Set once the detection result for this frame is known, or right away if it isn't detected.
+  boolean detectionDone;
+  // Faces found in this frame, or null if it wasn't detected or the detection failed.
+  List<Face> detectedFaces;
+
+  // The faces the flower reacted to while deciding this frame, and which of them has priority.
+  List<Face> faces = Collections.emptyList();
+  int priorityId;
+
+  int[] argb;
+  boolean hasPreview;
+
+  private int width;
+  private int height;
+
+  PipelineFrame(int width, int height) {
+    setSize(width, height);
+  }
+
+  /** Resizes the frame's buffers, unless they already fit a frame of the given size. */
+  void setSize(int width, int height) {
+    if (width == this.width && height == this.height) {
+      return;
+    }
+    this.width = width;
+    this.height = height;
+    nv21 = new byte[Nv21Packer.bufferSize(width, height)];
+    argb = new int[width * height];
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public byte[] getNv21() {
+    return detectionInput == VideoProcessor.DetectionInput.NV21 ? nv21 : null;
+  }
+
+  @Override
+  public int[] getArgb() {
+    return argb;
+  }
+
+  /** Hands the camera image back to its reader, if the frame still holds one. */
+  void releaseImage() {
+    if (image != null) {
+      imageReader.release(image);
+      image = null;
+      imageReader = null;
+    }
+  }
+
+  /** Clears the per-frame state before the frame is reused. */
+  void reset() {
+    image = null;
+    imageReader = null;
+    yuv.clear();
+    detectionDone = false;
+    detectedFaces = null;
+    faces = Collections.emptyList();
+    hasPreview = false;
+  }
+}
@@ -0,0 +1,81 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.util.Log;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A stage of the frame pipeline: a thread that takes items from a bounded queue and processes them
+ * in order. A full queue pushes back on the stage in front of it.
+ */
+class PipelineStage<T> {
+
+  private static final String TAG = PipelineStage.class.getSimpleName();
+
+  /** Work done by a stage for each item. */
+  interface Worker<T> {
+
+    void process(T item) throws InterruptedException;
+  }
+
+  private final BlockingQueue<T> queue;
+  private final Worker<T> worker;
+  private final Thread thread;
+
+  private volatile boolean running;
+
+  PipelineStage(String name, int capacity, Worker<T> worker) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.worker = worker;
+    this.thread = new Thread(this::run, name);
+  }
+
+  void start() {
+    running = true;
+    thread.start();
+  }
+
+  /** Stops the stage. Items still queued are not processed. */
+  void stop() {
+    running = false;
+    thread.interrupt();
+  }
+
+  /** Hands an item to this stage, waiting while its queue is full. */
+  void put(T item) throws InterruptedException {
+    queue.put(item);
+  }
+
+  /** Hands an item to this stage, or returns false right away if its queue is full. */
+  boolean offer(T item) {
+    return queue.offer(item);
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        worker.process(queue.take());
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        Log.e(TAG, thread.getName() + " failed to process a frame.", e);
+      }
+    }
+  }
+}
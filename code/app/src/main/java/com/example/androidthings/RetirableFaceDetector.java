@@ -0,0 +1,111 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.example.androidthings.vision.Face;
+import com.example.androidthings.vision.FaceDetector;
+import java.util.List;
+
+/**
+ * A {@link FaceDetector} that can be retired while its detections are still running. A closed
+ * detector may drop the callbacks of its pending detections, which would leave their frames waiting
+ * for good, so a retired detector is only closed once the last of its detections has called back.
+ */
+class RetirableFaceDetector {
+
+  private final FaceDetector detector;
+  private int pendingDetections;
+  private boolean retired;
+
+  RetirableFaceDetector(FaceDetector detector) {
+    this.detector = detector;
+  }
+
+  /** Starts detecting faces in the input; see {@link FaceDetector#detect}. */
+  void detect(FaceDetector.Input input, FaceDetector.Callback callback) {
+    synchronized (this) {
+      pendingDetections++;
+    }
+    PendingCallback pendingCallback = new PendingCallback(callback);
+    boolean started = false;
+    try {
+      detector.detect(input, pendingCallback);
+      started = true;
+    } finally {
+      if (!started) {
+        pendingCallback.done();
+      }
+    }
+  }
+
+  /** Stops taking detections and closes the detector once its detections have called back. */
+  synchronized void retire() {
+    if (retired) {
+      return;
+    }
+    retired = true;
+    if (pendingDetections == 0) {
+      detector.close();
+    }
+  }
+
+  private synchronized void onDetectionDone() {
+    pendingDetections--;
+    if (retired && pendingDetections == 0) {
+      detector.close();
+    }
+  }
+
+  /** Counts a detection as done once, when it calls back or fails to start. */
+  private final class PendingCallback implements FaceDetector.Callback {
+
+    private final FaceDetector.Callback callback;
+    private boolean done;
+
+    PendingCallback(FaceDetector.Callback callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void onFacesDetected(List<Face> faces) {
+      try {
+        callback.onFacesDetected(faces);
+      } finally {
+        done();
+      }
+    }
+
+    @Override
+    public void onDetectionFailed(Exception e) {
+      try {
+        callback.onDetectionFailed(e);
+      } finally {
+        done();
+      }
+    }
+
+    void done() {
+      synchronized (RetirableFaceDetector.this) {
+        if (done) {
+          return;
+        }
+        done = true;
+      }
+      onDetectionDone();
+    }
+  }
+}
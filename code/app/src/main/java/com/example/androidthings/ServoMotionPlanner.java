@@ -0,0 +1,128 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Plans the motion of a servo towards a target angle. The angle accelerates and decelerates
+ * within a maximum acceleration and moves no faster than a maximum speed, and is quantized to the
+ * servo's resolution, so that only angles the servo can tell apart are written to it.
+ */
+final class ServoMotionPlanner {
+
+  // Updates further apart than this, such as after a pause in the animation, move no further than
+  // an update this far apart would.
+  private static final float MAX_STEP_SECONDS = .1f;
+
+  private final float resolution;
+  private final float maxAcceleration;
+  private final float defaultMaxSpeed;
+
+  private float maxSpeed;
+  private float target;
+  private float position;
+  private float velocity;
+  private float writtenAngle = Float.NaN;
+  private long lastUpdateNs;
+  private boolean started;
+
+  /**
+   * @param resolution the smallest change of angle, in degrees, that the servo resolves.
+   * @param defaultMaxSpeed maximum speed in degrees per second, unless a target sets its own.
+   * @param maxAcceleration maximum acceleration and deceleration in degrees per second squared.
+   */
+  ServoMotionPlanner(float resolution, float defaultMaxSpeed, float maxAcceleration) {
+    this.resolution = resolution;
+    this.defaultMaxSpeed = defaultMaxSpeed;
+    this.maxAcceleration = maxAcceleration;
+    maxSpeed = defaultMaxSpeed;
+  }
+
+  /** Moves towards the angle at the default maximum speed. */
+  void setTarget(float angle) {
+    setTarget(angle, defaultMaxSpeed);
+  }
+
+  /** Moves towards the angle no faster than maxSpeed degrees per second. */
+  void setTarget(float angle, float maxSpeed) {
+    target = quantize(angle);
+    this.maxSpeed = Math.min(maxSpeed, defaultMaxSpeed);
+  }
+
+  /** Returns the angle being moved towards. */
+  float getTarget() {
+    return target;
+  }
+
+  /** Returns the planned angle, before quantization. */
+  float getPosition() {
+    return position;
+  }
+
+  /**
+   * Moves the planned angle on to the time nowNs, as returned by {@link System#nanoTime()}, and
+   * returns whether its quantized angle, {@link #getAngle()}, has to be written to the servo. The
+   * first update jumps to the target, since the servo's position is unknown.
+   */
+  boolean update(long nowNs) {
+    if (!started) {
+      started = true;
+      position = target;
+      velocity = 0;
+    } else {
+      float seconds = Math.min(MAX_STEP_SECONDS, Math.max(0, (nowNs - lastUpdateNs) / 1e9f));
+      step(seconds);
+    }
+    lastUpdateNs = nowNs;
+
+    float angle = quantize(position);
+    if (angle == writtenAngle) {
+      return false;
+    }
+    writtenAngle = angle;
+    return true;
+  }
+
+  /** Returns the quantized angle to write to the servo. */
+  float getAngle() {
+    return writtenAngle;
+  }
+
+  private void step(float seconds) {
+    float distance = target - position;
+    if (Math.abs(distance) < resolution / 2 && Math.abs(velocity) <= maxAcceleration * seconds) {
+      position = target;
+      velocity = 0;
+      return;
+    }
+    // The fastest speed from which the servo can still stop at the target.
+    float stoppingSpeed = (float) Math.sqrt(2 * maxAcceleration * Math.abs(distance));
+    float desiredVelocity = Math.copySign(Math.min(maxSpeed, stoppingSpeed), distance);
+    float maxChange = maxAcceleration * seconds;
+    velocity += Math.max(-maxChange, Math.min(maxChange, desiredVelocity - velocity));
+    float next = position + velocity * seconds;
+    // Don't overshoot a target that is reached within this step.
+    if ((distance > 0 && next > target) || (distance < 0 && next < target)) {
+      next = target;
+      velocity = 0;
+    }
+    position = next;
+  }
+
+  private float quantize(float angle) {
+    return Math.round(angle / resolution) * resolution;
+  }
+}
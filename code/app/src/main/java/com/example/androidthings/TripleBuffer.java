@@ -0,0 +1,65 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Three preallocated buffers shared by one producer and one consumer without locks. The producer
+ * always owns a back buffer to write into and the consumer a front buffer to read from. Publishing
+ * and acquiring atomically exchange them with the middle buffer, so neither side ever waits for
+ * the other or touches a buffer the other one is using.
+ */
+class TripleBuffer<T> {
+
+  // Set on the middle index when it holds a buffer the consumer hasn't acquired yet.
+  private static final int FRESH = 1 << 2;
+  private static final int INDEX_MASK = FRESH - 1;
+
+  private final Object[] buffers;
+  private final AtomicInteger middle = new AtomicInteger(1);
+  private int back = 0;
+  private int front = 2;
+
+  TripleBuffer(T first, T second, T third) {
+    buffers = new Object[] {first, second, third};
+  }
+
+  /** Returns the buffer the producer may write into. */
+  @SuppressWarnings("unchecked")
+  T getBackBuffer() {
+    return (T) buffers[back];
+  }
+
+  /** Makes the back buffer available to the consumer and gives the producer a new one. */
+  void publish() {
+    back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Returns the most recently published buffer, which the consumer owns until its next call, or
+   * null if nothing was published since the last call.
+   */
+  @SuppressWarnings("unchecked")
+  T acquireLatest() {
+    if ((middle.get() & FRESH) == 0) {
+      return null;
+    }
+    front = middle.getAndSet(front) & INDEX_MASK;
+    return (T) buffers[front];
+  }
+}
@@ -27,55 +27,97 @@ import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
-import android.media.ImageReader;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
 import android.util.Log;
+import android.util.Range;
+import android.util.Size;
 import android.view.View;
 import android.widget.ImageView;
 import com.example.androidthings.Flower.State;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
+import com.example.androidthings.metrics.StageLatencies;
+import com.example.androidthings.metrics.StageLatencies.Stage;
+import com.example.androidthings.vision.CaptureQuality;
+import com.example.androidthings.vision.CaptureQualityController;
+import com.example.androidthings.vision.DetectionScheduler;
+import com.example.androidthings.vision.Face;
+import com.example.androidthings.vision.FaceDetector;
+import com.example.androidthings.vision.FaceTracker;
+import com.example.androidthings.vision.FirebaseFaceDetector;
+import com.example.androidthings.vision.FrameSource;
+import com.example.androidthings.vision.LookupTableYuvConverter;
+import com.example.androidthings.vision.Nv21Packer;
+import com.example.androidthings.vision.ParallelYuvConverter;
+import com.example.androidthings.vision.PriorityArbiter;
+import com.example.androidthings.vision.PriorityFaceSelector;
+import com.example.androidthings.vision.ProbabilityText;
+import com.example.androidthings.vision.WeightedDistanceSelector;
+import com.example.androidthings.vision.YuvConverter;
+import com.example.androidthings.vision.YuvFrame;
+import com.example.androidthings.vision.YuvFrameReader;
+import com.example.androidthings.vision.YuvFrameRecorder;
 import com.google.firebase.FirebaseApp;
-import com.google.firebase.ml.vision.FirebaseVision;
-import com.google.firebase.ml.vision.common.FirebaseVisionImage;
-import com.google.firebase.ml.vision.face.FirebaseVisionFace;
-import com.google.firebase.ml.vision.face.FirebaseVisionFaceDetector;
-import com.google.firebase.ml.vision.face.FirebaseVisionFaceDetectorOptions;
+import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Helper class that handles the collection of images and the detection of faces on those images.
+ * Each camera has its own VideoProcessor, with its own threads and tracked faces, and they share a
+ * {@link PriorityArbiter} that picks one priority face for the flower.
  */
-public class VideoProcessor implements ImageReader.OnImageAvailableListener {
+public class VideoProcessor {
 
   private static final String TAG = VideoProcessor.class.getSimpleName();
 
-  // This value is 2 ^ 18 - 1, and is used to clamp the RGB values before their ranges
-  // are normalized to eight bits.
-  static final int MAX_CHANNEL_VALUE = 262143;
-
   // Max numbers of captured images to be queued before displaying on view.
   private static final int MAX_IMAGES = 20;
 
+  // Max number of detections that may run at once. A second one keeps the detector busy while
+  // the result of the first is delivered.
+  private static final int MAX_DETECTIONS_IN_FLIGHT = 2;
+
+  // Number of frames, each with its own buffers, that can be in the pipeline at once. Camera
+  // images are dropped while all of them are in use.
+  private static final int FRAME_POOL_SIZE = 8;
+  // Capacity of the queues in front of the convert, detect and render stages.
+  private static final int STAGE_QUEUE_CAPACITY = 2;
 
+  // Size of the image faces are tracked in. The camera starts at this size, and faces detected at
+  // other capture sizes are scaled to it.
   public static final int IMAGE_WIDTH = 320;
   public static final int IMAGE_HEIGHT = 240;
 
+  // Frame rate the camera starts at, if it supports it at IMAGE_WIDTH by IMAGE_HEIGHT.
+  private static final int INITIAL_FPS = 30;
+  // Bounds of the capture sizes the capture quality may be stepped between.
+  private static final int MIN_CAPTURE_WIDTH = 160;
+  private static final int MIN_CAPTURE_HEIGHT = 120;
+  private static final int MAX_CAPTURE_WIDTH = 640;
+  private static final int MAX_CAPTURE_HEIGHT = 480;
+
   public static final float CENTER_IMAGE_Y = IMAGE_HEIGHT / 2;
   public static final float CENTER_IMAGE_X = IMAGE_WIDTH / 2;
 
@@ -87,60 +129,340 @@ public class VideoProcessor implements ImageReader.OnImageAvailableListener {
   // Smallest area allowed for a face's bouding box to be considered to be a priority face.
   private static final int SMALL_BOX_LIMIT = 3000;
   private static final double WEIGHT = .6;
+  // Margin in pixels by which the priority face may stray past the bounds before losing priority.
+  private static final int PRIORITY_HYSTERESIS_PX = 0;
+
+  // Max number of faces that are tracked at once.
+  private static final int MAX_TRACKED_FACES = 32;
+  // Number of frames after which a face that is no longer detected stops being tracked.
+  private static final int TRACKING_EVICTION_FRAMES = 90;
+  // Number of frames a face's smile or wink is held before the expression may change.
+  private static final int EXPRESSION_DWELL_FRAMES = 10;
+
+  // Frame rate of the preview in PreviewMode.RATE_LIMITED mode unless set otherwise.
+  private static final float DEFAULT_PREVIEW_FPS = 5;
+
+  // Number of threads, including the capture thread, that convert each frame by default.
+  private static final int DEFAULT_CONVERSION_WORKERS = Runtime.getRuntime().availableProcessors();
 
-  private final ExecutorService executorService = Executors.newFixedThreadPool(1);
+  private final ExecutorService executorService;
+  private final int conversionWorkers;
 
   private CameraDevice cameraDevice;
+  private CameraCaptureSession captureSession;
+  private CaptureReader captureReader;
+  // Steps the capture quality with the measured load; null if the camera's qualities are unknown.
+  private volatile CaptureQualityController captureQualityController;
+  private volatile boolean adaptiveCaptureQuality = true;
+  // Whether camera timestamps share the SystemClock.elapsedRealtimeNanos() time base.
+  private volatile boolean realtimeCameraTimestamps;
   private Handler backgroundHandler;
   private HandlerThread backgroundThread;
   private Handler uiHandler;
-  private ImageReader mImageReader;
   private ImageView mImage;
 
-  private OnAnnotatedFrameListener frameCallback;
-
-  private Canvas canvas;
-  private Bitmap displayBitmap;
-  private Bitmap buffer;
-  private Canvas bufferCanvas;
+  // Annotated preview frames, drawn by the render stage and shown by the main thread.
+  private volatile TripleBuffer<Bitmap> previewBitmaps;
+  private final Canvas previewCanvas = new Canvas();
+  private final AtomicBoolean previewUpdatePending = new AtomicBoolean();
+  private final Runnable updatePreview = this::updatePreview;
   private Paint detectionPaint;
   private Paint textPaint;
-  private byte[][] cachedYuvBytes;
-  private int[] output;
+  // Text of probabilities that aren't cached by ProbabilityText.
+  private final char[] labelText = new char[ProbabilityText.MAX_LENGTH];
+  // Planes of the camera image being recorded. Only used on the capture thread.
+  private final YuvFrame captureYuvFrame = new YuvFrame();
+  private YuvConverter yuvConverter;
+
+  private volatile @DetectionInput int detectionInput = DetectionInput.NV21;
+  private volatile @PreviewMode int previewMode = PreviewMode.EVERY_FRAME;
+  private volatile long previewIntervalNs = (long) (1_000_000_000L / DEFAULT_PREVIEW_FPS);
+  // captureNs of the last frame picked for the preview. Only used by the convert stage.
+  private long lastPreviewNs;
+  // Only used by the detect stage, so it is swapped there when a new one is set.
+  private RetirableFaceDetector faceDetector;
+  private final AtomicReference<FaceDetector> nextFaceDetector = new AtomicReference<>();
+  private final DetectionScheduler detectionScheduler =
+      new DetectionScheduler(MAX_DETECTIONS_IN_FLIGHT);
+  private final FaceTracker faceTracker;
+
+  private final BlockingQueue<PipelineFrame> freeFrames =
+      new ArrayBlockingQueue<>(FRAME_POOL_SIZE);
+  private final ArrayDeque<PipelineFrame> pendingDetections = new ArrayDeque<>();
+  private final AtomicLong nextFrameId = new AtomicLong();
+  private final PipelineStage<PipelineFrame> convertStage =
+      new PipelineStage<>("convert", STAGE_QUEUE_CAPACITY, this::convertFrame);
+  private final PipelineStage<PipelineFrame> detectStage =
+      new PipelineStage<>("detect", STAGE_QUEUE_CAPACITY, this::detectFrame);
+  // Sized to hold every frame so that completing detections never blocks.
+  private final PipelineStage<PipelineFrame> decideStage =
+      new PipelineStage<>("decide", FRAME_POOL_SIZE, this::decideFrame);
+  private final PipelineStage<PipelineFrame> renderStage =
+      new PipelineStage<>("render", STAGE_QUEUE_CAPACITY, this::renderFrame);
+
+  private final PriorityArbiter priorityArbiter;
+  private final int cameraIndex;
+  private final String cameraId;
+
+  // Set while camera images are recorded.
+  private volatile YuvFrameRecorder recorder;
+  // Set while a recording is replayed; camera images are ignored meanwhile.
+  private volatile FrameReplayer replayer;
+
+  /** Selects the image that is handed to the face detector. */
+  @IntDef({
+      DetectionInput.BITMAP,
+      DetectionInput.NV21,
+  })
+  @Retention(RetentionPolicy.SOURCE)
+  public @interface DetectionInput {
+    // Detect on the converted ARGB bitmap that is also shown in the preview.
+    int BITMAP = 0;
+    // Detect on the camera planes packed as NV21, converting to ARGB only for the preview.
+    int NV21 = 1;
+  }
 
-  private FirebaseVisionFaceDetectorOptions options;
-  private FirebaseVisionImage firebaseImage;
-  private FirebaseVisionFaceDetector detector;
-  private Task<List<FirebaseVisionFace>> result;
+  /** Selects which frames are drawn into the preview. */
+  @IntDef({
+      PreviewMode.EVERY_FRAME,
+      PreviewMode.RATE_LIMITED,
+      PreviewMode.HEADLESS,
+  })
+  @Retention(RetentionPolicy.SOURCE)
+  public @interface PreviewMode {
+    // Every frame is drawn while the preview is shown.
+    int EVERY_FRAME = 0;
+    // Frames are drawn at the preview frame rate, independently of the detection rate.
+    int RATE_LIMITED = 1;
+    // Nothing is drawn or posted to the main thread.
+    int HEADLESS = 2;
+  }
+
+  /** How fast a recording is replayed. Either way, every replayed frame is detected. */
+  @IntDef({
+      ReplayPacing.ORIGINAL,
+      ReplayPacing.AS_FAST_AS_POSSIBLE,
+  })
+  @Retention(RetentionPolicy.SOURCE)
+  public @interface ReplayPacing {
+    // Frames are fed at the pace they were recorded at.
+    int ORIGINAL = 0;
+    // Each frame is fed as soon as the pipeline, including the detector, can take it.
+    int AS_FAST_AS_POSSIBLE = 1;
+  }
 
-  private ConcurrentHashMap<Integer, FirebaseVisionFace> idToFace;
-  private ConcurrentHashMap<Integer, FirebaseVisionFace> currentIdToFace;
+  /** Drives the flowers with the first camera. */
+  VideoProcessor(
+      PriorityArbiter.StateListener stateListener,
+      Context context,
+      ImageView imageView,
+      Looper mainLooper) {
+    this(
+        new PriorityArbiter(1, stateListener),
+        0,
+        null,
+        context,
+        imageView,
+        mainLooper,
+        DEFAULT_CONVERSION_WORKERS);
+    stateListener.onStateChanged(State.IDLE);
+  }
 
-  private Set<Integer> removeIdSet;
+  /**
+   * @param priorityArbiter picks the priority face across the cameras and drives the flower.
+   * @param cameraIndex index of this camera in the arbiter.
+   * @param cameraId id of the camera to open, or null for the first camera.
+   * @param imageView shows this camera's preview, or null if it has no preview.
+   * @param conversionWorkers number of threads, including the capture thread, that each frame's
+   *     YUV conversion is split across.
+   */
+  VideoProcessor(
+      PriorityArbiter priorityArbiter,
+      int cameraIndex,
+      String cameraId,
+      Context context,
+      ImageView imageView,
+      Looper mainLooper,
+      int conversionWorkers) {
+    this.priorityArbiter = priorityArbiter;
+    this.cameraIndex = cameraIndex;
+    this.cameraId = cameraId;
+    faceTracker =
+        new FaceTracker(
+            MAX_TRACKED_FACES,
+            TRACKING_EVICTION_FRAMES,
+            EXPRESSION_DWELL_FRAMES,
+            new WeightedDistanceSelector(
+                PRIORITY_BOUND_LEFT,
+                PRIORITY_BOUND_RIGHT,
+                SMALL_BOX_LIMIT,
+                (int) CENTER_IMAGE_X,
+                (int) CENTER_IMAGE_Y,
+                WEIGHT,
+                PRIORITY_HYSTERESIS_PX));
+    this.conversionWorkers = Math.max(1, conversionWorkers);
+    // The capture thread converts one band itself, so the pool only needs the remaining workers.
+    executorService = Executors.newFixedThreadPool(Math.max(1, this.conversionWorkers - 1));
+    setYuvConverter(new LookupTableYuvConverter());
+    FirebaseApp.initializeApp(context);
+    faceDetector =
+        new RetirableFaceDetector(new FirebaseFaceDetector(MAX_DETECTIONS_IN_FLIGHT));
+    setUpImageCapture(context, imageView, mainLooper);
+  }
 
-  private final Flower flower;
+  void stop() {
+    stopReplay();
+    stopRecording();
+    convertStage.stop();
+    detectStage.stop();
+    decideStage.stop();
+    renderStage.stop();
+    executorService.shutdown();
+    faceDetector.retire();
+    FaceDetector unusedFaceDetector = nextFaceDetector.getAndSet(null);
+    if (unusedFaceDetector != null) {
+      unusedFaceDetector.close();
+    }
+  }
 
-  private boolean detectNewFace;
-  private Integer priorityId;
-  private double closestDistance;
+  /** Selects whether faces are detected on the NV21 camera planes or on the ARGB bitmap. */
+  public void setDetectionInput(@DetectionInput int detectionInput) {
+    this.detectionInput = detectionInput;
+  }
 
   /**
-   * Listener that controls image processing.
+   * Selects which frames are drawn into the preview. Only the preview is affected; every frame is
+   * still considered for detection.
    */
-  public interface OnAnnotatedFrameListener {
+  public void setPreviewMode(@PreviewMode int previewMode) {
+    this.previewMode = previewMode;
+  }
 
-    void onAnnotatedFrame(Bitmap bitmap);
+  /** Sets the frame rate of the preview in {@link PreviewMode#RATE_LIMITED} mode. */
+  public void setPreviewFps(float fps) {
+    previewIntervalNs = (long) (1_000_000_000L / fps);
   }
 
-  VideoProcessor(Flower flower, Context context, ImageView imageView, Looper mainLooper) {
-    this.flower = flower;
-    FirebaseApp.initializeApp(context);
-    flower.setState(State.IDLE);
-    setUpImageCapture(context, imageView, mainLooper);
+  /**
+   * Sets whether the capture resolution and frame rate are stepped down and up with the time it
+   * takes to process a frame. When disabled, the camera stays at its current quality.
+   */
+  public void setAdaptiveCaptureQuality(boolean adaptiveCaptureQuality) {
+    this.adaptiveCaptureQuality = adaptiveCaptureQuality;
   }
 
-  void stop() {
-    executorService.shutdown();
+  /** Sets the strategy that picks the priority face among the detected faces. */
+  public void setPrioritySelector(PriorityFaceSelector prioritySelector) {
+    faceTracker.setPrioritySelector(prioritySelector);
+  }
+
+  /**
+   * Sets the detector that finds faces in the camera frames. It takes over from the next frame
+   * that is detected, and the previous detector is closed once its detections have called back.
+   */
+  public void setFaceDetector(FaceDetector faceDetector) {
+    FaceDetector replaced = nextFaceDetector.getAndSet(faceDetector);
+    if (replaced != null) {
+      replaced.close();
+    }
+  }
+
+  /**
+   * Sets the converter used to turn camera frames into bitmaps. Each frame is split into row bands
+   * that are converted concurrently by the conversion workers.
+   */
+  public void setYuvConverter(YuvConverter yuvConverter) {
+    this.yuvConverter =
+        new ParallelYuvConverter(yuvConverter, executorService, conversionWorkers);
+  }
+
+  /**
+   * Starts recording every camera image to the file, replacing any recording in progress. Images
+   * that are dropped by the pipeline are recorded as well.
+   */
+  public void startRecording(File file) throws IOException {
+    stopRecording();
+    recorder = new YuvFrameRecorder(file);
+  }
+
+  /** Stops recording camera images. */
+  public void stopRecording() {
+    YuvFrameRecorder recorder = this.recorder;
+    if (recorder == null) {
+      return;
+    }
+    this.recorder = null;
+    try {
+      recorder.close();
+      Log.i(TAG, "Recorded " + recorder.getFrameCount() + " frames");
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to close recording", e);
+    }
+  }
+
+  /**
+   * Feeds the frames of a recording through the pipeline in place of the camera, replacing any
+   * replay in progress. The camera takes over again once the recording has been replayed.
+   */
+  public void startReplay(File file, @ReplayPacing int pacing) throws IOException {
+    startReplay(new YuvFrameReader(file), pacing);
+  }
+
+  /**
+   * Feeds the frames of a source, such as a {@link com.example.androidthings.vision.FakeCamera},
+   * through the pipeline in place of the camera, replacing any replay in progress. The camera takes
+   * over again once the source runs out of frames.
+   */
+  public void startReplay(FrameSource source, @ReplayPacing int pacing) {
+    stopReplay();
+    FrameReplayer replayer =
+        new FrameReplayer(
+            source,
+            pacing,
+            new FrameReplayer.Target() {
+              @Override
+              public PipelineFrame obtainFrame() throws InterruptedException {
+                return freeFrames.take();
+              }
+
+              @Override
+              public void submitFrame(PipelineFrame frame) throws InterruptedException {
+                frame.id = nextFrameId.getAndIncrement();
+                frame.timestampNs = frame.yuv.getTimestampNs();
+                frame.captureNs = System.nanoTime();
+                convertStage.put(frame);
+              }
+
+              @Override
+              public void releaseFrame(PipelineFrame frame) {
+                recycle(frame);
+              }
+
+              @Override
+              public void onReplayFinished(FrameReplayer replayer) {
+                synchronized (VideoProcessor.this) {
+                  if (VideoProcessor.this.replayer == replayer) {
+                    VideoProcessor.this.replayer = null;
+                  }
+                }
+              }
+            });
+    synchronized (this) {
+      this.replayer = replayer;
+    }
+    replayer.start();
+  }
+
+  /** Stops replaying and hands the pipeline back to the camera. */
+  public void stopReplay() {
+    FrameReplayer replayer;
+    synchronized (this) {
+      replayer = this.replayer;
+      this.replayer = null;
+    }
+    if (replayer != null) {
+      replayer.stop();
+    }
   }
 
   /**
@@ -149,18 +471,15 @@ public class VideoProcessor implements ImageReader.OnImageAvailableListener {
    * @param mainLooper Name of the main thread loop.
    */
   private void setUpImageCapture(Context context, ImageView imageView, Looper mainLooper) {
-    cachedYuvBytes = new byte[3][];
-    output = new int[IMAGE_WIDTH * IMAGE_HEIGHT];
-
-    displayBitmap = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Config.ARGB_8888);
-    canvas = new Canvas(displayBitmap);
-    firebaseImage = FirebaseVisionImage.fromBitmap(displayBitmap);
-
-    buffer = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Config.ARGB_8888);
-    bufferCanvas = new Canvas(buffer);
+    previewBitmaps = createPreviewBitmaps(IMAGE_WIDTH, IMAGE_HEIGHT);
+    for (int i = 0; i < FRAME_POOL_SIZE; i++) {
+      freeFrames.add(new PipelineFrame(IMAGE_WIDTH, IMAGE_HEIGHT));
+    }
 
     mImage = imageView;
-    mImage.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+    if (mImage != null) {
+      mImage.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+    }
 
     detectionPaint = new Paint();
     detectionPaint.setColor(Color.RED);
@@ -174,38 +493,17 @@ public class VideoProcessor implements ImageReader.OnImageAvailableListener {
     textPaint.setStrokeWidth(3.0f);
     textPaint.setAlpha(200);
     textPaint.setTextSize(15);
-    detectNewFace = true;
-    priorityId = Integer.MAX_VALUE;
 
-    backgroundThread = new HandlerThread("capture");
+    backgroundThread = new HandlerThread("capture" + cameraIndex);
     backgroundThread.start();
     backgroundHandler = new Handler(backgroundThread.getLooper());
 
-    options =
-        new FirebaseVisionFaceDetectorOptions.Builder()
-            .setClassificationType(FirebaseVisionFaceDetectorOptions.ALL_CLASSIFICATIONS)
-            .setTrackingEnabled(true)
-            .build();
-
-    idToFace = new ConcurrentHashMap<Integer, FirebaseVisionFace>();
-    currentIdToFace = new ConcurrentHashMap<Integer, FirebaseVisionFace>();
-
-    removeIdSet = new HashSet<>();
-
-    closestDistance = Integer.MAX_VALUE;
-
-    detector = FirebaseVision.getInstance().getVisionFaceDetector(options);
+    convertStage.start();
+    detectStage.start();
+    decideStage.start();
+    renderStage.start();
 
     uiHandler = new Handler(mainLooper);
-    frameCallback =
-        (bitmap) ->
-            uiHandler.post(
-                () -> {
-                  synchronized (bitmap) {
-                    Log.e(TAG, "Inside update bitmap");
-                    mImage.setImageBitmap(bitmap);
-                  }
-                });
 
     try {
       openCamera((CameraManager) context.getSystemService(Context.CAMERA_SERVICE));
@@ -219,21 +517,30 @@ public class VideoProcessor implements ImageReader.OnImageAvailableListener {
    */
   @SuppressLint("MissingPermission")
   private void openCamera(CameraManager manager) throws CameraAccessException {
-    String[] camIds = manager.getCameraIdList();
-    if (camIds.length < 1) {
-      Log.w(TAG, "No cameras found");
-      return;
+    String id = cameraId;
+    if (id == null) {
+      String[] camIds = manager.getCameraIdList();
+      if (camIds.length < 1) {
+        Log.w(TAG, "No cameras found");
+        return;
+      }
+      id = camIds[0];
     }
-    mImageReader =
-        ImageReader.newInstance(IMAGE_WIDTH, IMAGE_HEIGHT, ImageFormat.YUV_420_888, MAX_IMAGES);
-    mImageReader.setOnImageAvailableListener(this, backgroundHandler);
+    CameraCharacteristics characteristics = manager.getCameraCharacteristics(id);
+    Integer timestampSource =
+        characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+    realtimeCameraTimestamps =
+        timestampSource != null
+            && timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+    CaptureQuality initialQuality = setUpCaptureQualities(characteristics);
     manager.openCamera(
-        camIds[0],
+        id,
         new CameraDevice.StateCallback() {
           @Override
           public void onOpened(CameraDevice camera) {
             Log.d(TAG, "Camera opened");
-            startCamera(camera);
+            cameraDevice = camera;
+            startCapture(initialQuality);
           }
 
           @Override
@@ -248,16 +555,85 @@ public class VideoProcessor implements ImageReader.OnImageAvailableListener {
   }
 
   /**
-   * This method starts the camera to capture a session of images.
+   * Picks the capture qualities the camera supports and returns the one to start at. Without a
+   * list of supported qualities the camera starts at IMAGE_WIDTH by IMAGE_HEIGHT, and the quality
+   * isn't adapted.
    */
-  private void startCamera(CameraDevice camera) throws RuntimeException {
-    this.cameraDevice = camera;
+  private CaptureQuality setUpCaptureQualities(CameraCharacteristics characteristics) {
+    StreamConfigurationMap configurations =
+        characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    Range<Integer>[] fpsRanges =
+        characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+    Size[] sizes =
+        configurations == null ? null : configurations.getOutputSizes(ImageFormat.YUV_420_888);
+    if (sizes == null || sizes.length == 0 || fpsRanges == null || fpsRanges.length == 0) {
+      Log.w(TAG, "Supported capture qualities unknown, capture quality is fixed");
+      return new CaptureQuality(IMAGE_WIDTH, IMAGE_HEIGHT, 0, 0);
+    }
+
+    int[][] sizePairs = new int[sizes.length][];
+    for (int i = 0; i < sizes.length; i++) {
+      sizePairs[i] = new int[] {sizes[i].getWidth(), sizes[i].getHeight()};
+    }
+    int[][] fpsPairs = new int[fpsRanges.length][];
+    for (int i = 0; i < fpsRanges.length; i++) {
+      fpsPairs[i] = new int[] {fpsRanges[i].getLower(), fpsRanges[i].getUpper()};
+    }
+    List<CaptureQuality> qualities =
+        CaptureQualityController.buildQualities(
+            sizePairs,
+            fpsPairs,
+            MIN_CAPTURE_WIDTH,
+            MIN_CAPTURE_HEIGHT,
+            MAX_CAPTURE_WIDTH,
+            MAX_CAPTURE_HEIGHT);
+    if (qualities.isEmpty()) {
+      Log.w(TAG, "No supported capture quality within bounds, capture quality is fixed");
+      return new CaptureQuality(IMAGE_WIDTH, IMAGE_HEIGHT, 0, 0);
+    }
+    CaptureQuality initialQuality =
+        CaptureQualityController.closestQuality(
+            qualities, IMAGE_WIDTH, IMAGE_HEIGHT, INITIAL_FPS);
+    captureQualityController =
+        new CaptureQualityController(qualities, initialQuality);
+    return initialQuality;
+  }
+
+  /**
+   * Starts capturing at the given quality, replacing the current capture session and image reader.
+   * Images from the previous reader that are still in the pipeline stay readable until they are
+   * released. Runs on the capture thread.
+   */
+  private void startCapture(CaptureQuality quality) {
+    if (cameraDevice == null) {
+      return;
+    }
+    Log.i(TAG, "Capturing at " + quality);
+    if (captureSession != null) {
+      captureSession.close();
+      captureSession = null;
+    }
+    if (captureReader != null) {
+      captureReader.retire();
+    }
+    captureReader =
+        new CaptureReader(
+            quality.getWidth(),
+            quality.getHeight(),
+            MAX_IMAGES,
+            this::onImageAvailable,
+            backgroundHandler);
     try {
       final CaptureRequest.Builder captureRequestBuilder =
           cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-      captureRequestBuilder.addTarget(mImageReader.getSurface());
+      captureRequestBuilder.addTarget(captureReader.getSurface());
+      if (quality.getMaxFps() > 0) {
+        captureRequestBuilder.set(
+            CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+            new Range<>(quality.getMinFps(), quality.getMaxFps()));
+      }
       cameraDevice.createCaptureSession(
-          Collections.singletonList(mImageReader.getSurface()),
+          Collections.singletonList(captureReader.getSurface()),
           new CameraCaptureSession.StateCallback() {
             @Override
             public void onConfigured(CameraCaptureSession session) {
@@ -266,6 +642,7 @@ public class VideoProcessor implements ImageReader.OnImageAvailableListener {
               if (cameraDevice == null) {
                 return;
               }
+              captureSession = session;
               try {
                 CaptureRequest captureRequest = captureRequestBuilder.build();
                 Log.d(TAG, "let's initiate capture...");
@@ -287,287 +664,375 @@ public class VideoProcessor implements ImageReader.OnImageAvailableListener {
   }
 
   /**
-   * This method acquires images and detects faces and facial expressions in the image.
+   * Capture stage: acquires the latest camera image and hands it to the convert stage. The image is
+   * dropped if no pooled frame is free or the convert stage is still busy.
    */
-  @Override
-  public synchronized void onImageAvailable(ImageReader reader) {
+  private void onImageAvailable(CaptureReader reader) {
+    Image image;
     try {
-      Image image = reader.acquireLatestImage();
+      image = reader.acquireLatestImage();
       if (image == null) {
         return;
       }
-      imageToBitmap(image, displayBitmap);
-      image.close();
     } catch (IllegalStateException e) {
       Log.e(TAG, "Too many images queued to be saved. Dropping this one.", e);
       return;
     }
 
-    result =
-        detector
-            .detectInImage(firebaseImage)
-            .addOnSuccessListener(
-                new OnSuccessListener<List<FirebaseVisionFace>>() {
-                  @Override
-                  public void onSuccess(List<FirebaseVisionFace> faces) {
-                    currentIdToFace.clear();
-                    for (FirebaseVisionFace face : faces) {
-                      idToFace.put(face.getTrackingId(), face);
-                      currentIdToFace.put(face.getTrackingId(), face);
-                    }
-                  }
-                });
-    canvas.drawBitmap(displayBitmap, 0, 0, null);
-
-    synchronized (buffer) {
-      bufferCanvas.drawBitmap(displayBitmap, 0, 0, null);
-      try {
-        if (currentIdToFace.isEmpty()) {
-          flower.setState(State.IDLE);
-          detectNewFace = true;
-        } else if (currentIdToFace.size() == 1) {
-          flower.setState(State.DETECTING);
-          detectNewFace = false;
-        } else {
-          flower.setState(State.DETECTING);
-          detectNewFace = checkPriorityId();
-          if (detectNewFace) {
-            priorityId = getNewPriorityId();
-          }
-        }
-
-        for (Entry<Integer, FirebaseVisionFace> face : currentIdToFace.entrySet()) {
-          if (idToFace.containsKey(face.getKey())) {
-            drawBoundingBoxes(bufferCanvas, face.getKey());
-          } else {
-            removeIdSet.add(face.getKey());
-          }
-        }
-
-      } catch (IOException e) {
-        Log.e(TAG, "Unable to draw bounding boxes", e);
-      }
+    if (replayer != null) {
+      reader.release(image);
+      return;
+    }
+    if (realtimeCameraTimestamps) {
+      StageLatencies.record(
+          Stage.CAMERA, SystemClock.elapsedRealtimeNanos() - image.getTimestamp());
     }
+    record(image);
 
-    for (int id : removeIdSet) {
-      idToFace.remove(id);
+    PipelineFrame frame = freeFrames.poll();
+    if (frame == null) {
+      reader.release(image);
+      return;
+    }
+    frame.id = nextFrameId.getAndIncrement();
+    frame.timestampNs = image.getTimestamp();
+    frame.captureNs = System.nanoTime();
+    frame.image = image;
+    frame.imageReader = reader;
+    frame.yuv.set(image);
+    if (!convertStage.offer(frame)) {
+      frame.releaseImage();
+      recycle(frame);
     }
-    frameCallback.onAnnotatedFrame(buffer);
   }
 
-  /**
-   * Sends the priorityId's expression state to the flower.
-   */
-  public void setExpressionState(FirebaseVisionFace face) throws IOException {
-    if (face.getSmilingProbability() > .5) {
-      flower.setState(State.SMILE);
+  /** Appends the camera image to the recording, if one is in progress. */
+  private void record(Image image) {
+    YuvFrameRecorder recorder = this.recorder;
+    if (recorder == null) {
+      return;
     }
-    if ((face.getRightEyeOpenProbability() < .2 && face.getRightEyeOpenProbability() != -1
-        && face.getLeftEyeOpenProbability() > .2)
-        || (face.getLeftEyeOpenProbability() < .2 && face.getLeftEyeOpenProbability() != -1
-        && face.getRightEyeOpenProbability() > .2)) {
-      flower.setState(State.WINK);
+    try {
+      recorder.write(captureYuvFrame.set(image));
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to record frame, stopping the recording", e);
+      stopRecording();
+    } finally {
+      captureYuvFrame.clear();
     }
   }
 
   /**
-   * Determines a new priorityId to track.
+   * Convert stage: packs the detector input and converts the preview while the camera image is
+   * still open, then releases the image. A frame that fails here is recycled, and gives back its
+   * image and its detection slot.
    */
-  private synchronized int getNewPriorityId() {
-    Set<Integer> validIds = new HashSet<>();
-    for (Entry<Integer, FirebaseVisionFace> face : idToFace.entrySet()) {
-      if (currentIdToFace.containsKey(face.getKey())) {
-
-        if (idToFace.get(face.getKey()).getBoundingBox().width()
-            * idToFace.get(face.getKey()).getBoundingBox().height()
-            > SMALL_BOX_LIMIT) {
-
-          if ((idToFace.get(face.getKey()).getBoundingBox().centerX() > PRIORITY_BOUND_LEFT)
-              && (idToFace.get(face.getKey()).getBoundingBox().centerX() < PRIORITY_BOUND_RIGHT)) {
-            validIds.add(face.getKey());
-          }
+  private void convertFrame(PipelineFrame frame) throws InterruptedException {
+    frame.detectionTicket = DetectionScheduler.NO_TICKET;
+    boolean passedOn = false;
+    try {
+      long startNs = System.nanoTime();
+      YuvFrame yuvFrame = frame.yuv;
+      frame.setSize(yuvFrame.getWidth(), yuvFrame.getHeight());
+      boolean fromCamera = frame.image != null;
+      frame.fromCamera = fromCamera;
+      // Replayed frames are all detected, so that replays are repeatable.
+      frame.detectionTicket =
+          fromCamera
+              ? detectionScheduler.trySubmit(frame.captureNs)
+              : detectionScheduler.submit(frame.captureNs);
+      boolean detect = frame.detectionTicket != DetectionScheduler.NO_TICKET;
+      frame.detectionInput = detectionInput;
+      if (frame.detectionInput == DetectionInput.NV21) {
+        if (detect) {
+          Nv21Packer.pack(yuvFrame, frame.nv21);
+        }
+        frame.hasPreview = isPreviewFrame(frame);
+        if (frame.hasPreview) {
+          yuvConverter.convert(yuvFrame, frame.argb);
         }
+      } else {
+        yuvConverter.convert(yuvFrame, frame.argb);
+        frame.hasPreview = isPreviewFrame(frame);
       }
-    }
-
-    closestDistance = Integer.MAX_VALUE;
-    for (int id : validIds) {
-      double distanceFromCenter =
-          Math.sqrt(
-              (WEIGHT * Math.pow(idToFace.get(id).getBoundingBox().centerX() - CENTER_IMAGE_X, 2))
-                  + ((1 - WEIGHT)
-                  * Math.pow(idToFace.get(id).getBoundingBox().centerY() - CENTER_IMAGE_Y, 2)));
-      if (distanceFromCenter < closestDistance) {
-        closestDistance = distanceFromCenter;
-        priorityId = id;
+      yuvFrame.clear();
+      frame.releaseImage();
+      long convertNs = System.nanoTime() - startNs;
+      StageLatencies.record(Stage.CONVERT, convertNs);
+      if (fromCamera) {
+        adaptCaptureQuality(frame, convertNs);
+      }
+      detectStage.put(frame);
+      passedOn = true;
+    } finally {
+      if (!passedOn) {
+        if (frame.detectionTicket != DetectionScheduler.NO_TICKET) {
+          detectionScheduler.onFailure(frame.detectionTicket);
+        }
+        recycle(frame);
       }
     }
-
-    if (validIds.isEmpty()) {
-      priorityId = Integer.MAX_VALUE;
-    }
-
-    return priorityId;
   }
 
   /**
-   * Checks that the current priorityId is still a valid.
+   * Feeds the time a camera frame took to convert to the capture quality controller, and switches
+   * the camera to a new quality if the controller picks one.
    */
-  private synchronized boolean checkPriorityId() {
-    if (priorityId == Integer.MAX_VALUE) {
-      return true;
+  private void adaptCaptureQuality(PipelineFrame frame, long convertNs) {
+    CaptureQualityController controller = captureQualityController;
+    if (controller == null) {
+      return;
     }
-
-    if (!(currentIdToFace.containsKey(priorityId))) {
-      priorityId = Integer.MAX_VALUE;
-      return true;
+    controller.onFrameConverted(frame.getWidth(), frame.getHeight(), convertNs);
+    if (!adaptiveCaptureQuality) {
+      return;
     }
-
-    if (!(idToFace.containsKey(priorityId))) {
-      priorityId = Integer.MAX_VALUE;
-      return true;
+    CaptureQuality quality = controller.update(System.nanoTime());
+    if (quality != null) {
+      Log.i(TAG, "Frame load " + controller.getLoad() + ", switching capture quality");
+      backgroundHandler.post(() -> startCapture(quality));
     }
-    if (!((idToFace.get(priorityId).getBoundingBox().centerX() > PRIORITY_BOUND_LEFT)
-        && (idToFace.get(priorityId).getBoundingBox().centerX() < PRIORITY_BOUND_RIGHT))) {
-      return true;
+  }
+
+  /** Scales faces detected in a frame to IMAGE_WIDTH by IMAGE_HEIGHT, where they are tracked. */
+  private static List<Face> toTrackingSpace(List<Face> faces, PipelineFrame frame) {
+    if (frame.getWidth() == IMAGE_WIDTH && frame.getHeight() == IMAGE_HEIGHT) {
+      return faces;
     }
-    if (idToFace.get(priorityId).getBoundingBox().height()
-        * idToFace.get(priorityId).getBoundingBox().width()
-        < SMALL_BOX_LIMIT) {
-      return true;
+    float scaleX = IMAGE_WIDTH / (float) frame.getWidth();
+    float scaleY = IMAGE_HEIGHT / (float) frame.getHeight();
+    List<Face> scaledFaces = new ArrayList<>(faces.size());
+    for (int i = 0; i < faces.size(); i++) {
+      scaledFaces.add(faces.get(i).scale(scaleX, scaleY));
     }
+    return scaledFaces;
+  }
 
-    return false;
+  /** Returns whether the frame should be drawn into the preview. */
+  private boolean isPreviewFrame(PipelineFrame frame) {
+    if (mImage == null) {
+      return false;
+    }
+    switch (previewMode) {
+      case PreviewMode.HEADLESS:
+        return false;
+      case PreviewMode.RATE_LIMITED:
+        if (frame.captureNs - lastPreviewNs < previewIntervalNs || !mImage.isShown()) {
+          return false;
+        }
+        lastPreviewNs = frame.captureNs;
+        return true;
+      default:
+        return mImage.isShown();
+    }
   }
 
   /**
-   * Draws the bounding boxes of the currentIds to the screen.
+   * Detect stage: submits the frame to the detector if it was scheduled for detection. Frames leave
+   * this stage in the order they were captured, each one once its own detection is done. A frame
+   * whose detection can't be submitted is passed on without faces.
    */
-  private synchronized void drawBoundingBoxes(Canvas canvas, int id) throws IOException {
-    detectionPaint.setColor(Color.RED);
-    if (currentIdToFace.size() == 1) {
-      priorityId = id;
-    }
-    if ((priorityId != Integer.MAX_VALUE) && (id == priorityId)) {
-      detectionPaint.setColor(Color.BLUE);
-      try {
-        setExpressionState(idToFace.get(priorityId));
-      } catch (IOException e) {
-        Log.e(TAG, "Unable to set expression state", e);
-      }
+  private void detectFrame(PipelineFrame frame) {
+    synchronized (pendingDetections) {
+      pendingDetections.add(frame);
+      frame.detectionDone = frame.detectionTicket == DetectionScheduler.NO_TICKET;
     }
-    canvas.drawRect(idToFace.get(id).getBoundingBox(), detectionPaint);
-    canvas.drawText(
-        String.format("%.2f", idToFace.get(id).getSmilingProbability()),
-        idToFace.get(id).getBoundingBox().right,
-        idToFace.get(id).getBoundingBox().bottom,
-        textPaint);
-    canvas.drawText(
-        String.format("%.2f", idToFace.get(id).getLeftEyeOpenProbability()),
-        idToFace.get(id).getBoundingBox().right,
-        idToFace.get(id).getBoundingBox().top,
-        textPaint);
-    canvas.drawText(
-        String.format("%.2f", idToFace.get(id).getRightEyeOpenProbability()),
-        idToFace.get(id).getBoundingBox().left,
-        idToFace.get(id).getBoundingBox().top,
-        textPaint);
-  }
-
-  private void imageToBitmap(Image image, Bitmap bitmap) {
-    if (image == null) {
-      return;
+    boolean submitted = frame.detectionTicket == DetectionScheduler.NO_TICKET;
+    try {
+      if (!submitted) {
+        FaceDetector newFaceDetector = nextFaceDetector.getAndSet(null);
+        if (newFaceDetector != null) {
+          // Detections still running on the old detector keep their frames pending until they
+          // call back, so it isn't closed before then.
+          faceDetector.retire();
+          faceDetector = new RetirableFaceDetector(newFaceDetector);
+        }
+        detectFaces(frame);
+        submitted = true;
+      }
+    } finally {
+      if (!submitted) {
+        detectionScheduler.onFailure(frame.detectionTicket);
+        synchronized (pendingDetections) {
+          frame.detectionDone = true;
+        }
+      }
+      flushDetections();
     }
-    convertYUVImageToBitmap(image, bitmap, output, cachedYuvBytes);
   }
 
-  private static void convertYUVImageToBitmap(
-      Image image, Bitmap bitmap, int[] output, byte[][] cachedYuvBytes) {
-    Image.Plane[] planes = image.getPlanes();
-    fillBytes(planes, cachedYuvBytes);
-
-    final int yRowStride = planes[0].getRowStride();
-    final int uvRowStride = planes[1].getRowStride();
-    final int uvPixelStride = planes[1].getPixelStride();
+  /** Starts face detection on the frame and completes the frame once it is done. */
+  private void detectFaces(PipelineFrame frame) {
+    final long ticket = frame.detectionTicket;
+    final long submitNs = System.nanoTime();
+    faceDetector.detect(
+        frame,
+        new FaceDetector.Callback() {
+          @Override
+          public void onFacesDetected(List<Face> faces) {
+            long nowNs = System.nanoTime();
+            int inFlight = detectionScheduler.getInFlightCount();
+            boolean newest = detectionScheduler.onComplete(ticket, nowNs);
+            try {
+              long latencyNs = nowNs - submitNs;
+              StageLatencies.record(Stage.DETECT, latencyNs);
+              CaptureQualityController controller = captureQualityController;
+              if (controller != null && frame.fromCamera) {
+                controller.onDetectionCompleted(
+                    frame.getWidth(), frame.getHeight(), latencyNs, inFlight);
+              }
+              if (newest) {
+                frame.detectedFaces = toTrackingSpace(faces, frame);
+              }
+            } finally {
+              onDetectionDone(frame);
+            }
+          }
 
-    convertYUV420ToARGB8888(
-        cachedYuvBytes[0],
-        cachedYuvBytes[1],
-        cachedYuvBytes[2],
-        image.getWidth(),
-        image.getHeight(),
-        yRowStride,
-        uvRowStride,
-        uvPixelStride,
-        output);
+          @Override
+          public void onDetectionFailed(Exception e) {
+            Log.w(TAG, "Face detection failed", e);
+            detectionScheduler.onFailure(ticket);
+            onDetectionDone(frame);
+          }
+        });
+    StageLatencies.recordSince(Stage.DETECT_SUBMIT, submitNs);
+  }
 
-    bitmap.setPixels(output, 0, image.getWidth(), 0, 0, image.getWidth(), image.getHeight());
+  private void onDetectionDone(PipelineFrame frame) {
+    synchronized (pendingDetections) {
+      frame.detectionDone = true;
+    }
+    flushDetections();
   }
 
-  private static void fillBytes(final Image.Plane[] planes, final byte[][] yuvBytes) {
-    // Because of the variable row stride it's not possible to know in
-    // advance the actual necessary dimensions of the yuv planes.
-    for (int i = 0; i < planes.length; ++i) {
-      final ByteBuffer buffer = planes[i].getBuffer();
-      if (yuvBytes[i] == null || yuvBytes[i].length != buffer.capacity()) {
-        yuvBytes[i] = new byte[buffer.capacity()];
+  /** Passes every frame at the head of the pending queue whose detection is done to decide. */
+  private void flushDetections() {
+    synchronized (pendingDetections) {
+      while (!pendingDetections.isEmpty() && pendingDetections.peek().detectionDone) {
+        PipelineFrame frame = pendingDetections.poll();
+        // The decide queue can hold every pooled frame, so this only fails while stopping.
+        if (!decideStage.offer(frame)) {
+          recycle(frame);
+        }
       }
-      buffer.get(yuvBytes[i]);
-    }
-  }
-
-  private static void convertYUV420ToARGB8888(
-      byte[] yData,
-      byte[] uData,
-      byte[] vData,
-      int width,
-      int height,
-      int yRowStride,
-      int uvRowStride,
-      int uvPixelStride,
-      int[] out) {
-    int i = 0;
-    for (int y = 0; y < height; y++) {
-      int pY = yRowStride * y;
-      int uvRowStart = uvRowStride * (y >> 1);
-      int pU = uvRowStart;
-      int pV = uvRowStart;
-
-      for (int x = 0; x < width; x++) {
-        int uvOffset = (x >> 1) * uvPixelStride;
-        out[i++] =
-            YUV2RGB(
-                convertByteToInt(yData, pY + x),
-                convertByteToInt(uData, pU + uvOffset),
-                convertByteToInt(vData, pV + uvOffset));
+    }
+  }
+
+  /**
+   * Decide stage: updates the tracked faces with the frame's detection result and has the arbiter
+   * set the flower's state. Frames that weren't detected are decided on the most recent result.
+   */
+  private void decideFrame(PipelineFrame frame) throws InterruptedException {
+    boolean passedOn = false;
+    try {
+      faceTracker.update(frame.id, frame.detectedFaces);
+      priorityArbiter.update(cameraIndex, faceTracker, System.nanoTime());
+      frame.faces = faceTracker.getCurrentFaces();
+      // Only the camera with the priority face across all cameras draws it as the priority face.
+      frame.priorityId =
+          priorityArbiter.getPriorityCamera() == cameraIndex
+              ? faceTracker.getPriorityId()
+              : PriorityFaceSelector.NO_PRIORITY;
+      StageLatencies.recordSince(Stage.CAPTURE_TO_DECISION, frame.captureNs);
+      renderStage.put(frame);
+      passedOn = true;
+    } finally {
+      if (!passedOn) {
+        recycle(frame);
       }
     }
   }
 
-  private static int YUV2RGB(int nY, int nU, int nV) {
-    nY -= 16;
-    nU -= 128;
-    nV -= 128;
-    if (nY < 0) {
-      nY = 0;
+  /** Render stage: draws the frame and its faces into the preview and recycles the frame. */
+  private void renderFrame(PipelineFrame frame) {
+    try {
+      drawPreview(frame);
+    } finally {
+      recycle(frame);
     }
+  }
 
-    int nR = (int) (1192 * nY + 1634 * nV);
-    int nG = (int) (1192 * nY - 833 * nV - 400 * nU);
-    int nB = (int) (1192 * nY + 2066 * nU);
+  private void drawPreview(PipelineFrame frame) {
+    if (frame.hasPreview) {
+      int width = frame.getWidth();
+      int height = frame.getHeight();
+      Bitmap bitmap = previewBitmaps.getBackBuffer();
+      if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+        // The capture size changed. Frames rendered at the previous size are no longer shown.
+        previewBitmaps = createPreviewBitmaps(width, height);
+        bitmap = previewBitmaps.getBackBuffer();
+      }
+      bitmap.setPixels(frame.argb, 0, width, 0, 0, width, height);
+      previewCanvas.setBitmap(bitmap);
+      // Faces are tracked at IMAGE_WIDTH by IMAGE_HEIGHT.
+      previewCanvas.save();
+      previewCanvas.scale(width / (float) IMAGE_WIDTH, height / (float) IMAGE_HEIGHT);
+      for (int i = 0; i < frame.faces.size(); i++) {
+        Face face = frame.faces.get(i);
+        drawBoundingBoxes(
+            previewCanvas,
+            face,
+            frame.priorityId != PriorityFaceSelector.NO_PRIORITY
+                && face.getTrackingId() == frame.priorityId);
+      }
+      previewCanvas.restore();
+      previewCanvas.setBitmap(null);
+      previewBitmaps.publish();
+      // The main thread shows whichever frame is newest when it runs, so one post is enough.
+      if (previewUpdatePending.compareAndSet(false, true)) {
+        uiHandler.post(updatePreview);
+      }
+    }
+  }
+
+  /** Shows the most recently rendered preview frame. Runs on the main thread. */
+  private void updatePreview() {
+    previewUpdatePending.set(false);
+    Bitmap bitmap = previewBitmaps.acquireLatest();
+    if (bitmap != null) {
+      mImage.setImageBitmap(bitmap);
+    }
+  }
 
-    nR = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nR));
-    nG = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nG));
-    nB = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nB));
+  private static TripleBuffer<Bitmap> createPreviewBitmaps(int width, int height) {
+    return new TripleBuffer<>(
+        Bitmap.createBitmap(width, height, Config.ARGB_8888),
+        Bitmap.createBitmap(width, height, Config.ARGB_8888),
+        Bitmap.createBitmap(width, height, Config.ARGB_8888));
+  }
 
-    nR = (nR >> 10) & 0xff;
-    nG = (nG >> 10) & 0xff;
-    nB = (nB >> 10) & 0xff;
+  /** Returns the frame to the pool, releasing its camera image if it still holds one. */
+  private void recycle(PipelineFrame frame) {
+    frame.releaseImage();
+    frame.reset();
+    freeFrames.offer(frame);
+  }
 
-    return 0xff000000 | (nR << 16) | (nG << 8) | nB;
+  /**
+   * Draws the bounding box and probabilities of a face to the screen. The priority face is drawn
+   * in blue.
+   */
+  private void drawBoundingBoxes(Canvas canvas, Face face, boolean isPriority) {
+    float left = face.getLeft();
+    float top = face.getTop();
+    float right = face.getRight();
+    float bottom = face.getBottom();
+    detectionPaint.setColor(isPriority ? Color.BLUE : Color.RED);
+    canvas.drawRect(left, top, right, bottom, detectionPaint);
+    drawProbability(canvas, face.getSmilingProbability(), right, bottom);
+    drawProbability(canvas, face.getLeftEyeOpenProbability(), right, top);
+    drawProbability(canvas, face.getRightEyeOpenProbability(), left, top);
   }
 
-  private static int convertByteToInt(byte[] arr, int pos) {
-    return arr[pos] & 0xFF;
+  /** Draws a probability with two decimals without allocating. Only used by the render stage. */
+  private void drawProbability(Canvas canvas, float probability, float x, float y) {
+    char[] text = ProbabilityText.cached(probability);
+    if (text != null) {
+      canvas.drawText(text, 0, text.length, x, y, textPaint);
+    } else {
+      int length = ProbabilityText.format(probability, labelText);
+      canvas.drawText(labelText, 0, length, x, y, textPaint);
+    }
   }
 }
@@ -0,0 +1,167 @@
+package com.example.androidthings.metrics;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram of latencies that any number of threads can record into without locking.
+ * Latencies are kept in microseconds in log-linear buckets: 16 buckets for each power of two, so a
+ * reported percentile is within about 6% of the recorded value.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Latencies from 2^(MAX_EXPONENT + 1) microseconds (about 18 minutes) on share an overflow
+  // bucket after the buckets of the exponents up to MAX_EXPONENT.
+  private static final int MAX_EXPONENT = 29;
+  private static final int BUCKET_COUNT =
+      SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalUs = new AtomicLong();
+  private final AtomicLong maxUs = new AtomicLong();
+
+  /** Records a latency. Negative latencies are recorded as zero. */
+  public void record(long latencyNs) {
+    long us = Math.max(0, latencyNs / 1000);
+    counts.incrementAndGet(bucketOf(us));
+    totalUs.addAndGet(us);
+    long max = maxUs.get();
+    while (us > max && !maxUs.compareAndSet(max, us)) {
+      max = maxUs.get();
+    }
+  }
+
+  /** Forgets every recorded latency. */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalUs.set(0);
+    maxUs.set(0);
+  }
+
+  /**
+   * Returns the percentiles of the latencies recorded so far. Latencies recorded while the snapshot
+   * is taken may or may not be included.
+   */
+  public Snapshot snapshot() {
+    long[] bucketCounts = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      bucketCounts[i] = counts.get(i);
+      count += bucketCounts[i];
+    }
+    long max = maxUs.get();
+    return new Snapshot(
+        count,
+        count == 0 ? 0 : totalUs.get() / count,
+        percentile(bucketCounts, count, max, .5),
+        percentile(bucketCounts, count, max, .9),
+        percentile(bucketCounts, count, max, .99),
+        percentile(bucketCounts, count, max, .999),
+        max);
+  }
+
+  /** Returns the highest latency of the bucket the percentile falls into, capped at the max. */
+  private static long percentile(long[] bucketCounts, long count, long max, double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile * count);
+    long seen = 0;
+    for (int i = 0; i < bucketCounts.length; i++) {
+      seen += bucketCounts[i];
+      if (seen >= rank) {
+        return Math.min(max, highestValueOf(i));
+      }
+    }
+    return max;
+  }
+
+  static int bucketOf(long us) {
+    if (us < SUB_BUCKET_COUNT) {
+      return (int) us;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(us);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (us >>> shift) & (SUB_BUCKET_COUNT - 1);
+    return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    if (bucket == BUCKET_COUNT - 1) {
+      return Long.MAX_VALUE;
+    }
+    int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+    int subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+    return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+  }
+
+  /** Percentiles of a histogram at one point in time, in microseconds. */
+  public static class Snapshot {
+
+    public final long count;
+    public final long meanUs;
+    public final long p50Us;
+    public final long p90Us;
+    public final long p99Us;
+    public final long p999Us;
+    public final long maxUs;
+
+    Snapshot(long count, long meanUs, long p50Us, long p90Us, long p99Us, long p999Us, long maxUs) {
+      this.count = count;
+      this.meanUs = meanUs;
+      this.p50Us = p50Us;
+      this.p90Us = p90Us;
+      this.p99Us = p99Us;
+      this.p999Us = p999Us;
+      this.maxUs = maxUs;
+    }
+
+    @Override
+    public String toString() {
+      return "n="
+          + count
+          + " mean="
+          + formatMs(meanUs)
+          + " p50="
+          + formatMs(p50Us)
+          + " p90="
+          + formatMs(p90Us)
+          + " p99="
+          + formatMs(p99Us)
+          + " p99.9="
+          + formatMs(p999Us)
+          + " max="
+          + formatMs(maxUs);
+    }
+
+    private static String formatMs(long us) {
+      return String.format("%.2fms", us / 1000.0);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.example.androidthings.metrics;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.support.annotation.IntDef;
+import android.util.Log;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Latency histograms of the stages between a face appearing in front of the camera and the flower
+ * reacting to it. Recording is cheap enough to do on every frame; {@link #log()} dumps the
+ * percentiles on demand.
+ */
+public final class StageLatencies {
+
+  private static final String TAG = StageLatencies.class.getSimpleName();
+
+  /** The measured stages. */
+  @IntDef({
+      Stage.CAMERA,
+      Stage.CONVERT,
+      Stage.DETECT_SUBMIT,
+      Stage.DETECT,
+      Stage.CAPTURE_TO_DECISION,
+      Stage.SET_STATE,
+      Stage.ANIMATE_FRAME,
+      Stage.SET_LEDS,
+  })
+  @Retention(RetentionPolicy.SOURCE)
+  public @interface Stage {
+    // From the camera's timestamp of an image until it is handed to the app.
+    int CAMERA = 0;
+    // Packing and converting a camera image.
+    int CONVERT = 1;
+    // Handing a frame to the face detector.
+    int DETECT_SUBMIT = 2;
+    // From handing a frame to the face detector until its faces are known.
+    int DETECT = 3;
+    // From handing a camera image to the app until the flower's state is decided on it.
+    int CAPTURE_TO_DECISION = 4;
+    // Flower.setState.
+    int SET_STATE = 5;
+    // Animating one frame of a sequence.
+    int ANIMATE_FRAME = 6;
+    // Writing the colors to the LED strip.
+    int SET_LEDS = 7;
+  }
+
+  private static final String[] NAMES = {
+    "camera",
+    "convert",
+    "detect submit",
+    "detect",
+    "capture to decision",
+    "set state",
+    "animate frame",
+    "set LEDs",
+  };
+
+  private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[NAMES.length];
+
+  static {
+    for (int i = 0; i < HISTOGRAMS.length; i++) {
+      HISTOGRAMS[i] = new LatencyHistogram();
+    }
+  }
+
+  private StageLatencies() {}
+
+  /** Records the latency of a stage. */
+  public static void record(@Stage int stage, long latencyNs) {
+    HISTOGRAMS[stage].record(latencyNs);
+  }
+
+  /** Records the time from {@code startNs}, as returned by {@link System#nanoTime()}, until now. */
+  public static void recordSince(@Stage int stage, long startNs) {
+    HISTOGRAMS[stage].record(System.nanoTime() - startNs);
+  }
+
+  /** Returns the percentiles recorded for a stage so far. */
+  public static LatencyHistogram.Snapshot snapshot(@Stage int stage) {
+    return HISTOGRAMS[stage].snapshot();
+  }
+
+  /** Logs the percentiles of every stage. */
+  public static void log() {
+    for (int stage = 0; stage < HISTOGRAMS.length; stage++) {
+      Log.i(TAG, NAMES[stage] + ": " + HISTOGRAMS[stage].snapshot());
+    }
+  }
+
+  /** Forgets every recorded latency. */
+  public static void reset() {
+    for (LatencyHistogram histogram : HISTOGRAMS) {
+      histogram.reset();
+    }
+  }
+}
@@ -33,8 +33,7 @@ public class ExpressionSequence extends Sequence {
   private final float opening;
 
   public ExpressionSequence(
-      Flower flower, float hue, float opening, Runnable sequenceCompletedCallback)
-      throws IOException {
+      Flower flower, float hue, float opening, Runnable sequenceCompletedCallback) {
     super(flower, sequenceCompletedCallback);
     this.hue = hue;
     this.opening = opening;
@@ -0,0 +1,56 @@
+package com.example.androidthings.sequences;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A cyclic LED animation precomputed into one flat array, frame after frame, so that animating a
+ * frame is a copy instead of color math.
+ */
+final class FrameTable {
+
+  /** Generates the colors of one frame of the cycle. */
+  interface FrameGenerator {
+
+    void generate(int[] colors, int frame);
+  }
+
+  private final int[] table;
+  private final int frameCount;
+  private final int ledCount;
+
+  /** Generates the frames 0 to frameCount - 1; frame frameCount must look like frame 0 again. */
+  FrameTable(int frameCount, int ledCount, FrameGenerator generator) {
+    this.frameCount = frameCount;
+    this.ledCount = ledCount;
+    table = new int[frameCount * ledCount];
+    int[] colors = new int[ledCount];
+    for (int frame = 0; frame < frameCount; frame++) {
+      generator.generate(colors, frame);
+      System.arraycopy(colors, 0, table, frame * ledCount, ledCount);
+    }
+  }
+
+  /** Returns the number of frames in the cycle. */
+  int getFrameCount() {
+    return frameCount;
+  }
+
+  /** Copies the colors of the frame, which may be past the end of the cycle, into colors. */
+  void copyFrame(int frame, int[] colors) {
+    System.arraycopy(table, (frame % frameCount) * ledCount, colors, 0, ledCount);
+  }
+}
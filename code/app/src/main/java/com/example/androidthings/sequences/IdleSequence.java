@@ -16,8 +16,8 @@ package com.example.androidthings.sequences;
  * limitations under the License.
  */
 
-import android.graphics.Color;
 import android.util.Log;
+import com.example.androidthings.FixedPointColor;
 import com.example.androidthings.Flower;
 import com.example.androidthings.FlowerLEDController;
 import java.io.IOException;
@@ -28,10 +28,23 @@ public class IdleSequence extends Sequence {
 
   private static final String TAG = IdleSequence.class.getSimpleName();
   private static final Random random = new Random();
+  private static final int COLOR_COUNT = 150;
+  static final int TOP_LED_COUNT = 6;
+  static final FrameTable RAINBOW_VERTICAL =
+      new FrameTable(
+          COLOR_COUNT,
+          FlowerLEDController.LED_COUNT,
+          (colors, frame) -> generateRainbowVertical(colors, TOP_LED_COUNT, frame));
+
+  private static final float MIN_OPENING = .5f;
+  private static final float MAX_OPENING = .75f;
+  // The petals drift by .0075 per frame.
+  private static final float OPENING_SPEED = .0075f * 1000 / FRAME_DELAY_MS;
+
   private final int[] colors = new int[FlowerLEDController.LED_COUNT];
-  private double openingIncrementPerStep = .0075f;
-  public IdleSequence(Flower flower, float opening, Runnable sequenceCompletedCallback)
-      throws IOException {
+  private boolean opening = true;
+
+  public IdleSequence(Flower flower, Runnable sequenceCompletedCallback) {
     super(flower, sequenceCompletedCallback);
   }
 
@@ -47,29 +60,40 @@ public class IdleSequence extends Sequence {
       flower.setOpening(1f);
       Log.i(TAG, "Configuration Mode Active.");
     } else {
-      if ((flower.getOpening() <= .5f && openingIncrementPerStep < 0)
-          || (flower.getOpening() >= .75f && openingIncrementPerStep > 0)
-          || (directionChange > 85)) {
-        openingIncrementPerStep *= -1;
+      // Turns around at either end, or at random.
+      float end = opening ? MAX_OPENING : MIN_OPENING;
+      boolean reachedEnd =
+          flower.getOpening() == flower.getTargetOpening()
+              && Math.abs(flower.getTargetOpening() - end) < .01f;
+      if (reachedEnd || directionChange > 85) {
+        opening = !opening;
       }
-      flower.setOpening(flower.getOpening() + (float) openingIncrementPerStep);
+      flower.setOpening(opening ? MAX_OPENING : MIN_OPENING, OPENING_SPEED);
     }
-    generateRainbowVertical(colors, 6, frame);
+    RAINBOW_VERTICAL.copyFrame(frame, colors);
     flower.setLEDs(colors);
     return false;
   }
 
-  private static void generateRainbowVertical(int[] colors, int top, int frame) {
-    int numColors = 150;
-    float[] hsv0 = {360f * (frame % numColors) / numColors, 1f, 1f};
-    float[] hsv1 = {360f * ((frame + 10) % numColors) / numColors, 1f, 1f};
+  static void generateRainbowVertical(int[] colors, int top, int frame) {
+    int color0 = rainbowColor(frame % COLOR_COUNT);
+    int color1 = rainbowColor((frame + 10) % COLOR_COUNT);
 
     for (int i = 0; i < top; i++) {
-      colors[i] = Color.HSVToColor(0, hsv1);
+      colors[i] = color1;
     }
 
     for (int i = top; i < colors.length; i++) {
-      colors[i] = Color.HSVToColor(0, hsv0);
+      colors[i] = color0;
     }
   }
+
+  // Returns the color at the index of COLOR_COUNT colors around the color wheel.
+  private static int rainbowColor(int index) {
+    return FixedPointColor.hsvToColor(
+        0,
+        index * FixedPointColor.HUE_CYCLE / COLOR_COUNT,
+        FixedPointColor.ONE,
+        FixedPointColor.ONE);
+  }
 }
\ No newline at end of file
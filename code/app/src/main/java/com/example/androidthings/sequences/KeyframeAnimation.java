@@ -0,0 +1,278 @@
+package com.example.androidthings.sequences;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * An animation described by keyframes and compiled into one LED frame and one opening per
+ * animation frame, so that playing it back is a lookup. The format is line based; blank lines and
+ * lines starting with # are ignored:
+ *
+ * <pre>
+ * interruptible false      # Whether other states may cut the animation short. Default true.
+ * loop false               # Whether the animation repeats instead of completing. Default false.
+ * key 0 step 1 ffffff      # key TIME_MS INTERPOLATION OPENING COLOR...
+ * key 400 linear 1 ffaa00
+ * key 2800 step 1 ffaa00
+ * </pre>
+ *
+ * <p>Keyframes are in order of time, from 0. The interpolation, one of step, linear or ease, is
+ * how the animation gets from the previous keyframe to this one: step holds the previous keyframe
+ * until this one's time, and ease accelerates out of the previous keyframe and decelerates into
+ * this one. Colors are RGB in hex, from the first LED on, and repeat to cover every LED. A looping
+ * animation ends where it starts over, so its last keyframe should match its first, and it must be
+ * interruptible.
+ */
+public final class KeyframeAnimation {
+
+  // How the animation gets from one keyframe to the next.
+  private static final int STEP = 0;
+  private static final int LINEAR = 1;
+  private static final int EASE = 2;
+
+  private static final Pattern COLOR = Pattern.compile("[0-9a-fA-F]{6}");
+
+  private final FrameTable frames;
+  private final float[] openings;
+  private final boolean interruptible;
+  private final boolean looping;
+
+  private KeyframeAnimation(
+      FrameTable frames, float[] openings, boolean interruptible, boolean looping) {
+    this.frames = frames;
+    this.openings = openings;
+    this.interruptible = interruptible;
+    this.looping = looping;
+  }
+
+  /** Returns the number of frames of the animation. */
+  public int getFrameCount() {
+    return openings.length;
+  }
+
+  /** Returns whether other states may cut the animation short. */
+  public boolean isInterruptible() {
+    return interruptible;
+  }
+
+  /** Returns whether the animation repeats instead of completing. */
+  public boolean isLooping() {
+    return looping;
+  }
+
+  /** Copies the LED colors of the frame, from 0 to getFrameCount() - 1, into colors. */
+  public void copyColors(int frame, int[] colors) {
+    frames.copyFrame(frame, colors);
+  }
+
+  /** Returns the opening of the frame, from 0 to getFrameCount() - 1. */
+  public float getOpening(int frame) {
+    return openings[frame];
+  }
+
+  /**
+   * Reads keyframes and compiles them into frames of frameMs milliseconds each, for ledCount
+   * LEDs.
+   *
+   * @throws IOException if the keyframes can't be read or are malformed.
+   */
+  public static KeyframeAnimation compile(Reader reader, int frameMs, int ledCount)
+      throws IOException {
+    boolean interruptible = true;
+    boolean looping = false;
+    List<Keyframe> keyframes = new ArrayList<>();
+
+    BufferedReader lines = new BufferedReader(reader);
+    int lineNumber = 0;
+    for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+      lineNumber++;
+      int comment = line.indexOf('#');
+      String[] tokens = (comment < 0 ? line : line.substring(0, comment)).trim().split("\\s+");
+      if (tokens[0].isEmpty()) {
+        continue;
+      }
+      try {
+        switch (tokens[0]) {
+          case "interruptible":
+            interruptible = parseBoolean(tokens);
+            break;
+          case "loop":
+            looping = parseBoolean(tokens);
+            break;
+          case "key":
+            Keyframe keyframe = parseKeyframe(tokens, ledCount);
+            if (!keyframes.isEmpty()
+                && keyframe.timeMs <= keyframes.get(keyframes.size() - 1).timeMs) {
+              throw new IOException("keyframes must be in order of time");
+            }
+            if (keyframes.isEmpty() && keyframe.timeMs != 0) {
+              throw new IOException("the first keyframe must be at 0 ms");
+            }
+            keyframes.add(keyframe);
+            break;
+          default:
+            throw new IOException("unknown keyword " + tokens[0]);
+        }
+      } catch (IOException | IllegalArgumentException e) {
+        throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+      }
+    }
+    if (keyframes.isEmpty()) {
+      throw new IOException("No keyframes");
+    }
+    if (looping && !interruptible) {
+      // It would hold the flower in its state for good.
+      throw new IOException("A looping animation must be interruptible");
+    }
+
+    int durationMs = keyframes.get(keyframes.size() - 1).timeMs;
+    // A looping animation's last frame is its first one again, so it's left out.
+    int frameCount = Math.max(1, durationMs / frameMs + (looping ? 0 : 1));
+    float[] openings = new float[frameCount];
+    for (int frame = 0; frame < frameCount; frame++) {
+      openings[frame] = interpolateOpening(keyframes, frame * frameMs);
+    }
+    FrameTable frames =
+        new FrameTable(
+            frameCount,
+            ledCount,
+            (colors, frame) -> interpolateColors(keyframes, frame * frameMs, colors));
+    return new KeyframeAnimation(frames, openings, interruptible, looping);
+  }
+
+  /** A parsed keyframe. */
+  private static final class Keyframe {
+    final int timeMs;
+    final int interpolation;
+    final float opening;
+    final int[] colors;
+
+    Keyframe(int timeMs, int interpolation, float opening, int[] colors) {
+      this.timeMs = timeMs;
+      this.interpolation = interpolation;
+      this.opening = opening;
+      this.colors = colors;
+    }
+  }
+
+  private static boolean parseBoolean(String[] tokens) throws IOException {
+    if (tokens.length != 2 || !(tokens[1].equals("true") || tokens[1].equals("false"))) {
+      throw new IOException(tokens[0] + " takes true or false");
+    }
+    return tokens[1].equals("true");
+  }
+
+  private static Keyframe parseKeyframe(String[] tokens, int ledCount) throws IOException {
+    if (tokens.length < 5) {
+      throw new IOException("key takes a time, an interpolation, an opening and colors");
+    }
+    int timeMs = Integer.parseInt(tokens[1]);
+    int interpolation;
+    switch (tokens[2]) {
+      case "step":
+        interpolation = STEP;
+        break;
+      case "linear":
+        interpolation = LINEAR;
+        break;
+      case "ease":
+        interpolation = EASE;
+        break;
+      default:
+        throw new IOException("unknown interpolation " + tokens[2]);
+    }
+    float opening = Float.parseFloat(tokens[3]);
+    if (!(opening >= 0 && opening <= 1)) {
+      throw new IOException("opening must be from 0 to 1, was " + tokens[3]);
+    }
+    int colorCount = tokens.length - 4;
+    if (colorCount > ledCount) {
+      throw new IOException("more colors than the " + ledCount + " LEDs");
+    }
+    int[] colors = new int[ledCount];
+    for (int i = 0; i < ledCount; i++) {
+      String color = tokens[4 + i % colorCount];
+      if (!COLOR.matcher(color).matches()) {
+        throw new IOException("colors must be 6 hex digits, was " + color);
+      }
+      colors[i] = Integer.parseInt(color, 16);
+    }
+    return new Keyframe(timeMs, interpolation, opening, colors);
+  }
+
+  private static float interpolateOpening(List<Keyframe> keyframes, int timeMs) {
+    int next = nextKeyframe(keyframes, timeMs);
+    if (next == 0 || next == keyframes.size()) {
+      return keyframes.get(Math.min(next, keyframes.size() - 1)).opening;
+    }
+    Keyframe from = keyframes.get(next - 1);
+    Keyframe to = keyframes.get(next);
+    return from.opening + (to.opening - from.opening) * progress(from, to, timeMs);
+  }
+
+  private static void interpolateColors(List<Keyframe> keyframes, int timeMs, int[] colors) {
+    int next = nextKeyframe(keyframes, timeMs);
+    if (next == 0 || next == keyframes.size()) {
+      int[] keyColors = keyframes.get(Math.min(next, keyframes.size() - 1)).colors;
+      System.arraycopy(keyColors, 0, colors, 0, colors.length);
+      return;
+    }
+    Keyframe from = keyframes.get(next - 1);
+    Keyframe to = keyframes.get(next);
+    float progress = progress(from, to, timeMs);
+    for (int i = 0; i < colors.length; i++) {
+      colors[i] =
+          (interpolateChannel(from.colors[i], to.colors[i], 16, progress) << 16)
+              | (interpolateChannel(from.colors[i], to.colors[i], 8, progress) << 8)
+              | interpolateChannel(from.colors[i], to.colors[i], 0, progress);
+    }
+  }
+
+  // Returns the index of the first keyframe after timeMs, or the number of keyframes if none is.
+  private static int nextKeyframe(List<Keyframe> keyframes, int timeMs) {
+    int next = 0;
+    while (next < keyframes.size() && keyframes.get(next).timeMs <= timeMs) {
+      next++;
+    }
+    return next;
+  }
+
+  // Returns how far from the keyframe from to the keyframe to timeMs is, from 0 to 1.
+  private static float progress(Keyframe from, Keyframe to, int timeMs) {
+    float t = (float) (timeMs - from.timeMs) / (to.timeMs - from.timeMs);
+    switch (to.interpolation) {
+      case STEP:
+        return 0;
+      case EASE:
+        return t * t * (3 - 2 * t);
+      default:
+        return t;
+    }
+  }
+
+  private static int interpolateChannel(int from, int to, int shift, float progress) {
+    int a = (from >> shift) & 0xFF;
+    int b = (to >> shift) & 0xFF;
+    return Math.round(a + (b - a) * progress);
+  }
+}
@@ -0,0 +1,65 @@
+package com.example.androidthings.sequences;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.util.Log;
+import com.example.androidthings.FlowerLEDController;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keyframe animations by name. Each animation is read and compiled the first time it's asked for,
+ * and only once, even if several flowers play it.
+ */
+public final class KeyframeLibrary {
+
+  private static final String TAG = KeyframeLibrary.class.getSimpleName();
+
+  /** Opens the keyframes of an animation. */
+  public interface Source {
+
+    Reader open(String name) throws IOException;
+  }
+
+  private final Source source;
+  private final Map<String, KeyframeAnimation> animations = new HashMap<>();
+
+  public KeyframeLibrary(Source source) {
+    this.source = source;
+  }
+
+  /** Returns the compiled animation, or null if it couldn't be read or compiled. */
+  public synchronized KeyframeAnimation get(String name) {
+    if (animations.containsKey(name)) {
+      return animations.get(name);
+    }
+    KeyframeAnimation animation = null;
+    try (Reader reader = source.open(name)) {
+      animation =
+          KeyframeAnimation.compile(
+              reader, Sequence.FRAME_DELAY_MS, FlowerLEDController.LED_COUNT);
+      Log.i(TAG, "Compiled " + name + " into " + animation.getFrameCount() + " frames.");
+    } catch (IOException e) {
+      Log.e(TAG, "Couldn't load keyframes " + name + ".", e);
+    }
+    // A broken animation isn't retried on every state change.
+    animations.put(name, animation);
+    return animation;
+  }
+}
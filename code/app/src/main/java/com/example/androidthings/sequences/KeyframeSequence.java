@@ -0,0 +1,82 @@
+package com.example.androidthings.sequences;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.util.Log;
+import com.example.androidthings.Flower;
+import com.example.androidthings.FlowerLEDController;
+import java.io.IOException;
+
+/**
+ * Plays a compiled {@link KeyframeAnimation}. The animation is loaded on the animation thread when
+ * the sequence is created, so that reading and compiling it never holds up a state change; if it
+ * can't be loaded, the sequence completes at once.
+ */
+public class KeyframeSequence extends Sequence {
+
+  private static final String TAG = KeyframeSequence.class.getSimpleName();
+
+  private final KeyframeLibrary library;
+  private final String name;
+  private final int[] colors = new int[FlowerLEDController.LED_COUNT];
+
+  private volatile KeyframeAnimation animation;
+  private volatile boolean loaded;
+
+  public KeyframeSequence(
+      Flower flower, KeyframeLibrary library, String name, Runnable sequenceCompletedCallback) {
+    super(flower, sequenceCompletedCallback);
+    this.library = library;
+    this.name = name;
+    // Runs before the first frame, which is posted to the same thread later.
+    postToAnimationThread(this::load);
+  }
+
+  private void load() {
+    animation = library.get(name);
+    loaded = true;
+  }
+
+  /** Returns whether the animation may be cut short; it may until it's loaded. */
+  @Override
+  public boolean isInterruptible() {
+    KeyframeAnimation animation = this.animation;
+    return animation == null || animation.isInterruptible();
+  }
+
+  @Override
+  boolean animateNextFrame(int frame) throws IOException {
+    if (!loaded) {
+      return false;
+    }
+    KeyframeAnimation animation = this.animation;
+    if (animation == null) {
+      return true;
+    }
+    int frameCount = animation.getFrameCount();
+    int index = animation.isLooping() ? frame % frameCount : Math.min(frame, frameCount - 1);
+    if (flower.getIsInConfigMode()) {
+      flower.setOpening(1f);
+      Log.i(TAG, "Configuration Mode Active.");
+    } else {
+      flower.setOpening(animation.getOpening(index));
+    }
+    animation.copyColors(index, colors);
+    flower.setLEDs(colors);
+    return !animation.isLooping() && frame >= frameCount - 1;
+  }
+}
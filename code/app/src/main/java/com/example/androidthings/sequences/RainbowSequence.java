@@ -16,8 +16,8 @@ package com.example.androidthings.sequences;
  * limitations under the License.
  */
 
-import android.graphics.Color;
 import android.util.Log;
+import com.example.androidthings.FixedPointColor;
 import com.example.androidthings.Flower;
 import com.example.androidthings.FlowerLEDController;
 import java.io.IOException;
@@ -27,11 +27,17 @@ public class RainbowSequence extends Sequence {
 
   private static final String TAG = RainbowSequence.class.getSimpleName();
 
+  // The rainbow takes one frame per LED to go around the flower.
+  static final FrameTable RAINBOW =
+      new FrameTable(
+          FlowerLEDController.LED_COUNT,
+          FlowerLEDController.LED_COUNT,
+          RainbowSequence::generateRainbow);
+
   private final int[] colors = new int[FlowerLEDController.LED_COUNT];
   private final float opening;
 
-  public RainbowSequence(Flower flower, float opening, Runnable sequenceCompletedCallback)
-      throws IOException {
+  public RainbowSequence(Flower flower, float opening, Runnable sequenceCompletedCallback) {
     super(flower, sequenceCompletedCallback);
     this.opening = opening;
   }
@@ -43,7 +49,7 @@ public class RainbowSequence extends Sequence {
 
   @Override
   boolean animateNextFrame(int frame) throws IOException {
-    generateRainbow(colors, frame);
+    RAINBOW.copyFrame(frame, colors);
     if (flower.getIsInConfigMode()) {
       flower.setOpening(1f);
       Log.i(TAG, "Configuration Mode Active.");
@@ -55,12 +61,15 @@ public class RainbowSequence extends Sequence {
   }
 
   // Assigns gradient colors.
-  private static void generateRainbow(int[] colors, int frame) {
-    float[] hsv = {1f, 1f, 1f};
+  static void generateRainbow(int[] colors, int frame) {
     for (int i = 0; i < colors.length; i++) {
       int n = (i + frame) % colors.length;
-      hsv[0] = n * 360f / colors.length;
-      colors[i] = Color.HSVToColor(0, hsv);
+      colors[i] =
+          FixedPointColor.hsvToColor(
+              0,
+              n * FixedPointColor.HUE_CYCLE / colors.length,
+              FixedPointColor.ONE,
+              FixedPointColor.ONE);
     }
   }
 }
@@ -21,56 +21,79 @@ import android.os.HandlerThread;
 import android.os.SystemClock;
 import android.util.Log;
 import com.example.androidthings.Flower;
+import com.example.androidthings.metrics.StageLatencies;
+import com.example.androidthings.metrics.StageLatencies.Stage;
 import java.io.IOException;
 
-/** Interface representing an animation sequence. */
+/**
+ * Interface representing an animation sequence. The frames of all sequences, of all flowers, run
+ * on one shared animation thread, and a sequence can be started again after it's stopped.
+ */
 public abstract class Sequence {
 
   private static final String TAG = Sequence.class.getSimpleName();
   static final int FRAME_DELAY_MS = 80;
   private static final long AFTER_SEQUENCE_COMPLETION_DELAY_MS = 1000;
 
+  private static Handler animationHandler;
+
   protected final Flower flower;
 
-  private HandlerThread ledThread;
-  private Handler ledHandler;
+  private final Handler ledHandler;
+  // Posted for every frame, so that running a sequence doesn't allocate.
+  private final Runnable nextFrame = this::prepareNextFrame;
+  private final Runnable sequenceCompletedCallback;
 
   private boolean animationRunning = false;
   private boolean isComplete = false;
   private int currentFrame = 0;
-  private Runnable sequenceCompletedCallback;
 
   Sequence(Flower flower, Runnable sequenceCompletedCallback) {
     this.sequenceCompletedCallback = sequenceCompletedCallback;
     this.flower = flower;
-    ledThread = new HandlerThread(TAG + "Thread");
-    ledThread.start();
-    ledHandler = new Handler(ledThread.getLooper());
+    ledHandler = getAnimationHandler();
+  }
+
+  /** Returns the handler of the thread that runs the frames of every sequence. */
+  private static synchronized Handler getAnimationHandler() {
+    if (animationHandler == null) {
+      HandlerThread animationThread = new HandlerThread(TAG + "Thread");
+      animationThread.start();
+      animationHandler = new Handler(animationThread.getLooper());
+    }
+    return animationHandler;
   }
 
-  /** Starts animation sequence. */
-  public void start() {
+  /** Starts animation sequence from its first frame. */
+  public synchronized void start() {
     Log.e(TAG, "sequence started");
+    removeCallbacks();
+    currentFrame = 0;
+    isComplete = false;
     animationRunning = true;
-    ledHandler.post(this::prepareNextFrame);
+    ledHandler.post(nextFrame);
   }
 
   /** Pauses current animation sequence. */
-  public void pause() {
+  public synchronized void pause() {
     animationRunning = false;
   }
 
-  /** Stops current animation by removing ledhandler callback. */
+  /** Stops current animation by removing its pending frame and completion callbacks. */
   public synchronized void stop() {
     pause();
     currentFrame = 0;
+    removeCallbacks();
+  }
 
-    if (ledThread != null) {
-      ledThread.quit();
-    }
+  private void removeCallbacks() {
+    ledHandler.removeCallbacks(nextFrame);
+    ledHandler.removeCallbacks(sequenceCompletedCallback);
+  }
 
-    ledHandler = null;
-    ledThread = null;
+  /** Runs the task on the animation thread, before any frame that is posted after it. */
+  void postToAnimationThread(Runnable task) {
+    ledHandler.post(task);
   }
 
   abstract boolean animateNextFrame(int frame) throws IOException;
@@ -79,17 +102,22 @@ public abstract class Sequence {
   public abstract boolean isInterruptible();
 
   /** Determines if a sequence is completed. */
-  public boolean isComplete() {
+  public synchronized boolean isComplete() {
     return isComplete;
   }
 
   /** Prepares animation for the next frame. */
-  private void prepareNextFrame() {
+  private synchronized void prepareNextFrame() {
+    if (!animationRunning) {
+      return;
+    }
     long currFrameStartMs = SystemClock.elapsedRealtime();
     boolean newIsComplete = false;
 
     try {
+      long startNs = System.nanoTime();
       newIsComplete = animateNextFrame(currentFrame++);
+      StageLatencies.recordSince(Stage.ANIMATE_FRAME, startNs);
     } catch (Exception e) {
       Log.e(TAG, "Couldn't animate next frame.", e);
     }
@@ -100,7 +128,7 @@ public abstract class Sequence {
       } else {
         long now = SystemClock.elapsedRealtime();
         long delay = Math.max(0, FRAME_DELAY_MS - (now - currFrameStartMs));
-        ledHandler.postDelayed(this::prepareNextFrame, delay);
+        ledHandler.postDelayed(nextFrame, delay);
       }
     }
     isComplete = newIsComplete;
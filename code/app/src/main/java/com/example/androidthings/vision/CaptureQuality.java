@@ -0,0 +1,59 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/** A capture resolution and the frame rate range the camera is asked to hold it at. */
+public final class CaptureQuality {
+
+  private final int width;
+  private final int height;
+  private final int minFps;
+  private final int maxFps;
+
+  public CaptureQuality(int width, int height, int minFps, int maxFps) {
+    this.width = width;
+    this.height = height;
+    this.minFps = minFps;
+    this.maxFps = maxFps;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getMinFps() {
+    return minFps;
+  }
+
+  public int getMaxFps() {
+    return maxFps;
+  }
+
+  /** Returns the number of pixels captured per second at the highest frame rate. */
+  public long getPixelRate() {
+    return (long) width * height * maxFps;
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + height + "@" + minFps + "-" + maxFps + "fps";
+  }
+}
@@ -0,0 +1,251 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Steps the capture resolution and frame rate down when processing a frame takes longer than the
+ * frame interval, and back up when there is room to spare. A step down moves to the quality with
+ * the next lower pixel rate that is neither larger nor faster than the current one, and a step up
+ * to the quality with the next higher pixel rate that is neither smaller nor slower.
+ *
+ * <p>A frame's cost is its conversion time plus its share of the detection time: detections
+ * overlap, so each costs its latency divided by the number of detections that were in flight when
+ * it completed. The load is that cost over the frame interval. Only frames of the current
+ * quality's size count, so frames still in the pipeline after a change don't count towards the
+ * new quality.
+ */
+public class CaptureQualityController {
+
+  // Weight of the newest sample in the smoothed conversion and detection times.
+  private static final double SMOOTHING = .1;
+  // Load above which the quality is stepped down.
+  private static final double STEP_DOWN_LOAD = .9;
+  // Projected load at the next quality up below which the quality is stepped up.
+  private static final double STEP_UP_LOAD = .6;
+  // Time the load is measured for after a change before the quality may change again.
+  private static final long SETTLE_NS = 3_000_000_000L;
+  // Number of conversions and detections needed before the load is trusted.
+  private static final int MIN_SAMPLES = 10;
+
+  private final List<CaptureQuality> qualities;
+
+  private int level;
+  private long settledAtNs = Long.MIN_VALUE;
+  private double convertNs;
+  private double detectNs;
+  private int convertSamples;
+  private int detectSamples;
+
+  /**
+   * @param qualities the qualities to pick from, ordered from the highest pixel rate to the lowest.
+   * @param initialQuality the quality the camera starts at; must be one of {@code qualities}.
+   */
+  public CaptureQualityController(List<CaptureQuality> qualities, CaptureQuality initialQuality) {
+    if (!qualities.contains(initialQuality)) {
+      throw new IllegalArgumentException("initialQuality must be one of qualities");
+    }
+    this.qualities = new ArrayList<>(qualities);
+    this.level = qualities.indexOf(initialQuality);
+  }
+
+  /**
+   * Returns the qualities made of the given sizes and frame rate ranges, ordered from the highest
+   * pixel rate to the lowest. Only sizes within the bounds and with the aspect ratio of the largest
+   * bound are used, if there are any. Ranges with a fixed frame rate are preferred over ranges
+   * that end at the same frame rate.
+   *
+   * @param sizes widths and heights, as {@code {width, height}} pairs.
+   * @param fpsRanges frame rate ranges, as {@code {min, max}} pairs.
+   */
+  public static List<CaptureQuality> buildQualities(
+      int[][] sizes, int[][] fpsRanges, int minWidth, int minHeight, int maxWidth, int maxHeight) {
+    List<int[]> usableSizes = new ArrayList<>();
+    for (int[] size : sizes) {
+      if (size[0] >= minWidth
+          && size[0] <= maxWidth
+          && size[1] >= minHeight
+          && size[1] <= maxHeight
+          && (long) size[0] * maxHeight == (long) size[1] * maxWidth) {
+        usableSizes.add(size);
+      }
+    }
+    if (usableSizes.isEmpty()) {
+      for (int[] size : sizes) {
+        if (size[0] <= maxWidth && size[1] <= maxHeight) {
+          usableSizes.add(size);
+        }
+      }
+    }
+
+    List<int[]> usableRanges = new ArrayList<>();
+    for (int[] range : fpsRanges) {
+      int existing = -1;
+      for (int i = 0; i < usableRanges.size(); i++) {
+        if (usableRanges.get(i)[1] == range[1]) {
+          existing = i;
+        }
+      }
+      if (existing < 0) {
+        usableRanges.add(range);
+      } else if (range[0] == range[1]) {
+        usableRanges.set(existing, range);
+      }
+    }
+
+    List<CaptureQuality> qualities = new ArrayList<>();
+    for (int[] size : usableSizes) {
+      for (int[] range : usableRanges) {
+        qualities.add(new CaptureQuality(size[0], size[1], range[0], range[1]));
+      }
+    }
+    Collections.sort(qualities, (a, b) -> Long.compare(b.getPixelRate(), a.getPixelRate()));
+    return qualities;
+  }
+
+  /**
+   * Returns the quality of the given size with the highest frame rate up to {@code fps}, or if
+   * there is none, the quality whose pixel rate is closest to that of the size at {@code fps}.
+   */
+  public static CaptureQuality closestQuality(
+      List<CaptureQuality> qualities, int width, int height, int fps) {
+    // Qualities are ordered by pixel rate, so the first match has the highest frame rate.
+    for (CaptureQuality quality : qualities) {
+      if (quality.getWidth() == width && quality.getHeight() == height
+          && quality.getMaxFps() <= fps) {
+        return quality;
+      }
+    }
+    long pixelRate = (long) width * height * fps;
+    CaptureQuality closest = null;
+    for (CaptureQuality quality : qualities) {
+      if (closest == null
+          || Math.abs(quality.getPixelRate() - pixelRate)
+              < Math.abs(closest.getPixelRate() - pixelRate)) {
+        closest = quality;
+      }
+    }
+    return closest;
+  }
+
+  /** Returns the quality the camera is capturing at. */
+  public synchronized CaptureQuality getQuality() {
+    return qualities.get(level);
+  }
+
+  /** Adds the time a frame of the given size took to convert. */
+  public synchronized void onFrameConverted(int width, int height, long convertNs) {
+    if (!isCurrentSize(width, height)) {
+      return;
+    }
+    this.convertNs = convertSamples == 0 ? convertNs : smooth(this.convertNs, convertNs);
+    convertSamples++;
+  }
+
+  /**
+   * Adds the time from handing a frame of the given size to the detector until its faces were
+   * known.
+   *
+   * @param inFlight number of detections in flight when this one completed, including it.
+   */
+  public synchronized void onDetectionCompleted(
+      int width, int height, long latencyNs, int inFlight) {
+    if (!isCurrentSize(width, height)) {
+      return;
+    }
+    double costNs = (double) latencyNs / Math.max(1, inFlight);
+    detectNs = detectSamples == 0 ? costNs : smooth(detectNs, costNs);
+    detectSamples++;
+  }
+
+  private boolean isCurrentSize(int width, int height) {
+    CaptureQuality quality = qualities.get(level);
+    return width == quality.getWidth() && height == quality.getHeight();
+  }
+
+  /** Returns the measured cost of a frame over the frame interval at the current quality. */
+  public synchronized double getLoad() {
+    double frameIntervalNs = 1_000_000_000.0 / qualities.get(level).getMaxFps();
+    return (convertNs + detectNs) / frameIntervalNs;
+  }
+
+  /**
+   * Picks the quality for the measured load. Returns the new quality if it changed, or null. The
+   * measurements restart after a change, since they were taken at the previous quality.
+   */
+  public synchronized CaptureQuality update(long nowNs) {
+    if (settledAtNs == Long.MIN_VALUE) {
+      settledAtNs = nowNs + SETTLE_NS;
+    }
+    if (nowNs < settledAtNs || convertSamples < MIN_SAMPLES || detectSamples < MIN_SAMPLES) {
+      return null;
+    }
+    double load = getLoad();
+    CaptureQuality quality = qualities.get(level);
+    int newLevel = -1;
+    if (load > STEP_DOWN_LOAD) {
+      newLevel = nextLevelDown(quality);
+    } else {
+      int levelUp = nextLevelUp(quality);
+      // The cost of a frame grows with its size and the frame interval shrinks with the frame rate.
+      if (levelUp >= 0
+          && load * qualities.get(levelUp).getPixelRate() / quality.getPixelRate()
+              < STEP_UP_LOAD) {
+        newLevel = levelUp;
+      }
+    }
+    if (newLevel < 0) {
+      return null;
+    }
+    level = newLevel;
+    settledAtNs = nowNs + SETTLE_NS;
+    convertSamples = 0;
+    detectSamples = 0;
+    return qualities.get(level);
+  }
+
+  private int nextLevelDown(CaptureQuality quality) {
+    for (int i = level + 1; i < qualities.size(); i++) {
+      CaptureQuality candidate = qualities.get(i);
+      if (candidate.getWidth() <= quality.getWidth()
+          && candidate.getHeight() <= quality.getHeight()
+          && candidate.getMaxFps() <= quality.getMaxFps()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int nextLevelUp(CaptureQuality quality) {
+    for (int i = level - 1; i >= 0; i--) {
+      CaptureQuality candidate = qualities.get(i);
+      if (candidate.getWidth() >= quality.getWidth()
+          && candidate.getHeight() >= quality.getHeight()
+          && candidate.getMaxFps() >= quality.getMaxFps()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static double smooth(double smoothed, double sample) {
+    return smoothed + SMOOTHING * (sample - smoothed);
+  }
+}
@@ -0,0 +1,197 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Decides which camera frames are handed to the face detector so that detections never pile up.
+ *
+ * <p>At most {@code maxInFlight} detections run at once and frames that arrive while the detector
+ * is busy are dropped, leaving the camera to deliver the latest frame next time. Submissions are
+ * also spaced out to match the measured detector latency, so that overlapping detections finish
+ * evenly instead of in bursts. Every submission gets an increasing ticket, which lets results that
+ * complete out of order be recognized as stale.
+ *
+ * <p>A detection holds its slot until its ticket is completed or failed, however long that takes,
+ * because the detector may still be reading the frame's buffer until then.
+ */
+public class DetectionScheduler {
+
+  /** Returned by {@link #trySubmit} when the current frame should not be detected. */
+  public static final long NO_TICKET = -1;
+
+  // Weight of the newest sample in the moving averages of frame interval and detector latency.
+  private static final float SMOOTHING = .2f;
+
+  private final int maxInFlight;
+  private final long[] inFlightTickets;
+  private final long[] inFlightSubmitNs;
+
+  private int inFlight;
+  private long nextTicket;
+  private long newestCompletedTicket = NO_TICKET;
+
+  private long lastFrameNs = -1;
+  private float frameIntervalNs;
+  private float latencyNs;
+  private int framesToSkip;
+  private int framesSinceSubmit;
+
+  private long submitted;
+  private long dropped;
+  private long stale;
+
+  public DetectionScheduler(int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1, was " + maxInFlight);
+    }
+    this.maxInFlight = maxInFlight;
+    inFlightTickets = new long[maxInFlight];
+    inFlightSubmitNs = new long[maxInFlight];
+  }
+
+  /**
+   * Called once for every camera frame. Returns a ticket if the frame should be detected, in which
+   * case {@link #onComplete} or {@link #onFailure} must eventually be called with that ticket, or
+   * {@link #NO_TICKET} if the frame should be skipped.
+   */
+  public synchronized long trySubmit(long nowNs) {
+    if (lastFrameNs >= 0) {
+      frameIntervalNs = smooth(frameIntervalNs, nowNs - lastFrameNs);
+    }
+    lastFrameNs = nowNs;
+
+    framesSinceSubmit++;
+    if (inFlight >= maxInFlight || framesSinceSubmit <= framesToSkip) {
+      dropped++;
+      return NO_TICKET;
+    }
+
+    long ticket = nextTicket++;
+    inFlightTickets[inFlight] = ticket;
+    inFlightSubmitNs[inFlight] = nowNs;
+    inFlight++;
+    framesSinceSubmit = 0;
+    submitted++;
+    return ticket;
+  }
+
+  /**
+   * Submits a frame for detection, without adaptive skipping, once fewer than maxInFlight
+   * detections are in flight. Used for replayed frames, so that every one of them is detected and
+   * a replay gives the same results on every run. Returns the ticket, for which {@link
+   * #onComplete} or {@link #onFailure} must eventually be called.
+   */
+  public synchronized long submit(long nowNs) throws InterruptedException {
+    while (inFlight >= maxInFlight) {
+      wait();
+    }
+    long ticket = nextTicket++;
+    inFlightTickets[inFlight] = ticket;
+    inFlightSubmitNs[inFlight] = nowNs;
+    inFlight++;
+    submitted++;
+    return ticket;
+  }
+
+  /**
+   * Records that the detection for {@code ticket} completed. Returns false if a newer detection
+   * has already completed, in which case the result is stale and should be discarded.
+   */
+  public synchronized boolean onComplete(long ticket, long nowNs) {
+    long submitNs = release(ticket);
+    if (submitNs >= 0) {
+      latencyNs = smooth(latencyNs, nowNs - submitNs);
+      updateFramesToSkip();
+    }
+    if (ticket < newestCompletedTicket) {
+      stale++;
+      return false;
+    }
+    newestCompletedTicket = ticket;
+    return true;
+  }
+
+  /** Records that the detection for {@code ticket} failed. */
+  public synchronized void onFailure(long ticket) {
+    release(ticket);
+  }
+
+  /** Returns the number of detections in flight. */
+  public synchronized int getInFlightCount() {
+    return inFlight;
+  }
+
+  /** Returns the number of frames currently skipped between two submissions. */
+  public synchronized int getFramesToSkip() {
+    return framesToSkip;
+  }
+
+  /** Returns the smoothed detector latency in nanoseconds. */
+  public synchronized long getLatencyNs() {
+    return (long) latencyNs;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "DetectionScheduler{submitted="
+        + submitted
+        + ", dropped="
+        + dropped
+        + ", stale="
+        + stale
+        + ", inFlight="
+        + inFlight
+        + ", latencyMs="
+        + (long) latencyNs / 1_000_000
+        + ", framesToSkip="
+        + framesToSkip
+        + "}";
+  }
+
+  // Spreads the in-flight detections evenly over one detector latency.
+  private void updateFramesToSkip() {
+    if (frameIntervalNs <= 0) {
+      return;
+    }
+    float submitIntervalNs = latencyNs / maxInFlight;
+    framesToSkip = Math.max(0, (int) Math.ceil(submitIntervalNs / frameIntervalNs) - 1);
+  }
+
+  // Removes the ticket from the in-flight set and returns its submit time, or -1 if it wasn't in
+  // flight.
+  private long release(long ticket) {
+    for (int i = 0; i < inFlight; i++) {
+      if (inFlightTickets[i] == ticket) {
+        long submitNs = inFlightSubmitNs[i];
+        removeAt(i);
+        notifyAll();
+        return submitNs;
+      }
+    }
+    return -1;
+  }
+
+  private void removeAt(int i) {
+    inFlight--;
+    inFlightTickets[i] = inFlightTickets[inFlight];
+    inFlightSubmitNs[i] = inFlightSubmitNs[inFlight];
+  }
+
+  private static float smooth(float average, long sample) {
+    return average == 0 ? sample : average + SMOOTHING * (sample - average);
+  }
+}
@@ -0,0 +1,148 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.example.androidthings.Flower.State;
+
+/**
+ * Filters the expressions of tracked faces so that a single noisy detection doesn't change the
+ * flower's state. Each face's probabilities are smoothed over its detections, an expression starts
+ * and ends at different thresholds, and a new expression is only taken on once it has shown for a
+ * minimum number of frames, including a newly tracked face's first expression.
+ *
+ * <p>State is kept in fixed-size arrays indexed by the face's {@link FaceTrackingTable} entry. An
+ * entry's state is reset when it is reused for a different tracking id.
+ */
+public class ExpressionFilter {
+
+  // Weight of the newest detection in the smoothed probabilities.
+  private static final float SMOOTHING = .5f;
+
+  // A face starts smiling above SMILE_START and stops below SMILE_END.
+  private static final float SMILE_START = .6f;
+  private static final float SMILE_END = .4f;
+  // A face starts winking once one eye is below WINK_CLOSED_START while the other is above
+  // WINK_OPEN_START, and stops once that no longer holds for the END thresholds.
+  private static final float WINK_CLOSED_START = .15f;
+  private static final float WINK_OPEN_START = .25f;
+  private static final float WINK_CLOSED_END = .25f;
+  private static final float WINK_OPEN_END = .15f;
+
+  private final int minDwellFrames;
+
+  private final int[] trackingIds;
+  private final float[] smiling;
+  private final float[] leftEyeOpen;
+  private final float[] rightEyeOpen;
+  private final int[] expressions;
+  private final long[] expressionStartFrames;
+  // The expression the latest detections show, and the frame since which they show it.
+  private final int[] candidates;
+  private final long[] candidateStartFrames;
+
+  /**
+   * @param capacity capacity of the tracking table whose entries index the faces.
+   * @param minDwellFrames number of frames an expression must show before it's taken on, and is
+   *     held before it may change.
+   */
+  public ExpressionFilter(int capacity, int minDwellFrames) {
+    this.minDwellFrames = minDwellFrames;
+    trackingIds = new int[capacity];
+    smiling = new float[capacity];
+    leftEyeOpen = new float[capacity];
+    rightEyeOpen = new float[capacity];
+    expressions = new int[capacity];
+    expressionStartFrames = new long[capacity];
+    candidates = new int[capacity];
+    candidateStartFrames = new long[capacity];
+    for (int entry = 0; entry < capacity; entry++) {
+      trackingIds[entry] = FaceTrackingTable.NO_ENTRY;
+    }
+  }
+
+  /**
+   * Adds a detection of the face held by the tracking table entry and returns its filtered
+   * expression: {@link State#SMILE}, {@link State#WINK}, or {@link State#DETECTING} if it shows
+   * neither.
+   */
+  public @State int update(int entry, Face face, long frame) {
+    if (trackingIds[entry] != face.getTrackingId()) {
+      trackingIds[entry] = face.getTrackingId();
+      smiling[entry] = face.getSmilingProbability();
+      leftEyeOpen[entry] = face.getLeftEyeOpenProbability();
+      rightEyeOpen[entry] = face.getRightEyeOpenProbability();
+      expressions[entry] = State.DETECTING;
+      expressionStartFrames[entry] = frame;
+      candidates[entry] = State.DETECTING;
+      candidateStartFrames[entry] = frame;
+    } else {
+      smiling[entry] = smooth(smiling[entry], face.getSmilingProbability());
+      leftEyeOpen[entry] = smooth(leftEyeOpen[entry], face.getLeftEyeOpenProbability());
+      rightEyeOpen[entry] = smooth(rightEyeOpen[entry], face.getRightEyeOpenProbability());
+    }
+
+    int expression = expressions[entry];
+    int candidate;
+    if (isWinking(entry, expression == State.WINK)) {
+      candidate = State.WINK;
+    } else if (smiling[entry] > (expression == State.SMILE ? SMILE_END : SMILE_START)) {
+      candidate = State.SMILE;
+    } else {
+      candidate = State.DETECTING;
+    }
+    if (candidate != candidates[entry]) {
+      candidates[entry] = candidate;
+      candidateStartFrames[entry] = frame;
+    }
+    if (candidate != expression
+        && frame - candidateStartFrames[entry] >= minDwellFrames
+        && frame - expressionStartFrames[entry] >= minDwellFrames) {
+      expressions[entry] = candidate;
+      expressionStartFrames[entry] = frame;
+    }
+    return expressions[entry];
+  }
+
+  /** Returns the filtered expression of the face last added for the entry. */
+  public @State int getExpression(int entry) {
+    return expressions[entry];
+  }
+
+  private boolean isWinking(int entry, boolean wasWinking) {
+    float closed = wasWinking ? WINK_CLOSED_END : WINK_CLOSED_START;
+    float open = wasWinking ? WINK_OPEN_END : WINK_OPEN_START;
+    float left = leftEyeOpen[entry];
+    float right = rightEyeOpen[entry];
+    return (isComputed(right) && right < closed && left > open)
+        || (isComputed(left) && left < closed && right > open);
+  }
+
+  /** Smooths a probability, skipping values the detector didn't compute. */
+  private static float smooth(float smoothed, float probability) {
+    if (!isComputed(probability)) {
+      return smoothed;
+    }
+    if (!isComputed(smoothed)) {
+      return probability;
+    }
+    return smoothed + SMOOTHING * (probability - smoothed);
+  }
+
+  private static boolean isComputed(float probability) {
+    return probability != Face.UNCOMPUTED_PROBABILITY;
+  }
+}
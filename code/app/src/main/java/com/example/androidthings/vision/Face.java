@@ -0,0 +1,113 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/** A face found by a {@link FaceDetector}, in the pixel coordinates of the detected image. */
+public final class Face {
+
+  /** Probability reported when the detector didn't classify a feature. */
+  public static final float UNCOMPUTED_PROBABILITY = -1f;
+
+  private final int trackingId;
+  private final int left;
+  private final int top;
+  private final int right;
+  private final int bottom;
+  private final float smilingProbability;
+  private final float leftEyeOpenProbability;
+  private final float rightEyeOpenProbability;
+
+  public Face(
+      int trackingId,
+      int left,
+      int top,
+      int right,
+      int bottom,
+      float smilingProbability,
+      float leftEyeOpenProbability,
+      float rightEyeOpenProbability) {
+    this.trackingId = trackingId;
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+    this.smilingProbability = smilingProbability;
+    this.leftEyeOpenProbability = leftEyeOpenProbability;
+    this.rightEyeOpenProbability = rightEyeOpenProbability;
+  }
+
+  /** Returns this face with its bounding box scaled by the given factors. */
+  public Face scale(float scaleX, float scaleY) {
+    return new Face(
+        trackingId,
+        Math.round(left * scaleX),
+        Math.round(top * scaleY),
+        Math.round(right * scaleX),
+        Math.round(bottom * scaleY),
+        smilingProbability,
+        leftEyeOpenProbability,
+        rightEyeOpenProbability);
+  }
+
+  public int getTrackingId() {
+    return trackingId;
+  }
+
+  public int getLeft() {
+    return left;
+  }
+
+  public int getTop() {
+    return top;
+  }
+
+  public int getRight() {
+    return right;
+  }
+
+  public int getBottom() {
+    return bottom;
+  }
+
+  public int getWidth() {
+    return right - left;
+  }
+
+  public int getHeight() {
+    return bottom - top;
+  }
+
+  public int getCenterX() {
+    return (left + right) >> 1;
+  }
+
+  public int getCenterY() {
+    return (top + bottom) >> 1;
+  }
+
+  public float getSmilingProbability() {
+    return smilingProbability;
+  }
+
+  public float getLeftEyeOpenProbability() {
+    return leftEyeOpenProbability;
+  }
+
+  public float getRightEyeOpenProbability() {
+    return rightEyeOpenProbability;
+  }
+}
@@ -0,0 +1,51 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+/** Finds faces in camera frames. */
+public interface FaceDetector {
+
+  /** The frame handed to a detector. Its buffers stay valid until the callback has been called. */
+  interface Input {
+
+    int getWidth();
+
+    int getHeight();
+
+    /** Returns the frame packed as NV21, or null if it should be detected on its ARGB pixels. */
+    byte[] getNv21();
+
+    /** Returns the frame's ARGB_8888 pixels; only read when {@link #getNv21()} returns null. */
+    int[] getArgb();
+  }
+
+  /** Receives the result of a detection. May be called on any thread. */
+  interface Callback {
+
+    void onFacesDetected(List<Face> faces);
+
+    void onDetectionFailed(Exception e);
+  }
+
+  /** Starts detecting faces in the input and calls back once done. */
+  void detect(Input input, Callback callback);
+
+  /** Releases the detector's resources. */
+  void close();
+}
@@ -0,0 +1,141 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.example.androidthings.Flower.State;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tracks the faces detected by one camera from frame to frame, picks the priority face and filters
+ * its expression. A {@link PriorityArbiter} turns the results into flower states. Has no Android
+ * dependencies, so it can run on a plain JVM.
+ */
+public class FaceTracker {
+
+  private final FaceTrackingTable<Face> trackedFaces;
+  private final ExpressionFilter expressionFilter;
+  private volatile PriorityFaceSelector prioritySelector;
+
+  // Id of the most recent frame with a detection result; its faces are the current faces.
+  private long lastDetectedFrameId = -1;
+  private List<Face> currentFaces = Collections.emptyList();
+  private int currentFaceCount;
+  private int priorityId = PriorityFaceSelector.NO_PRIORITY;
+  private Face priorityFace;
+  private @State int priorityExpression = State.DETECTING;
+
+  /**
+   * @param maxTrackedFaces max number of faces that are tracked at once.
+   * @param evictionFrames number of frames after which a face that is no longer detected stops
+   *     being tracked.
+   * @param expressionDwellFrames number of frames a face's expression is held before it may
+   *     change.
+   */
+  public FaceTracker(
+      int maxTrackedFaces,
+      int evictionFrames,
+      int expressionDwellFrames,
+      PriorityFaceSelector prioritySelector) {
+    trackedFaces = new FaceTrackingTable<>(maxTrackedFaces, evictionFrames);
+    expressionFilter = new ExpressionFilter(maxTrackedFaces, expressionDwellFrames);
+    this.prioritySelector = prioritySelector;
+  }
+
+  /** Sets the strategy that picks the priority face among the current faces. */
+  public void setPrioritySelector(PriorityFaceSelector prioritySelector) {
+    this.prioritySelector = prioritySelector;
+  }
+
+  /**
+   * Updates the tracked faces and the priority face for a frame. {@code detectedFaces} is the
+   * frame's detection result, or null if the frame wasn't detected, in which case the most recent
+   * result is used again.
+   */
+  public void update(long frameId, List<Face> detectedFaces) {
+    if (detectedFaces != null) {
+      for (int i = 0; i < detectedFaces.size(); i++) {
+        Face face = detectedFaces.get(i);
+        int entry = trackedFaces.put(face.getTrackingId(), face, frameId);
+        expressionFilter.update(entry, face, frameId);
+      }
+      lastDetectedFrameId = frameId;
+      currentFaces = detectedFaces;
+    }
+    trackedFaces.evictStale(frameId);
+
+    PriorityFaceSelector selector = prioritySelector;
+    selector.begin(priorityId);
+    currentFaceCount = 0;
+    for (int entry = 0; entry < trackedFaces.getCapacity(); entry++) {
+      if (isCurrentFace(entry)) {
+        Face face = trackedFaces.valueAt(entry);
+        selector.offer(
+            face.getTrackingId(),
+            face.getCenterX(),
+            face.getCenterY(),
+            face.getWidth(),
+            face.getHeight());
+        currentFaceCount++;
+      }
+    }
+    priorityId = selector.select();
+
+    priorityFace = null;
+    priorityExpression = State.DETECTING;
+    if (priorityId != PriorityFaceSelector.NO_PRIORITY) {
+      int entry = trackedFaces.indexOf(priorityId);
+      if (entry != FaceTrackingTable.NO_ENTRY && isCurrentFace(entry)) {
+        priorityFace = trackedFaces.valueAt(entry);
+        priorityExpression = expressionFilter.getExpression(entry);
+      }
+    }
+  }
+
+  /** Returns the faces of the most recent detection. */
+  public List<Face> getCurrentFaces() {
+    return currentFaces;
+  }
+
+  /** Returns the number of tracked faces that were seen in the most recent detection. */
+  public int getCurrentFaceCount() {
+    return currentFaceCount;
+  }
+
+  /** Returns the tracking id of the priority face, or {@link PriorityFaceSelector#NO_PRIORITY}. */
+  public int getPriorityId() {
+    return priorityId;
+  }
+
+  /** Returns the priority face if it was seen in the most recent detection, or null. */
+  public Face getPriorityFace() {
+    return priorityFace;
+  }
+
+  /**
+   * Returns the filtered expression of the priority face: {@link State#SMILE}, {@link State#WINK},
+   * or {@link State#DETECTING} if it shows neither or there is no current priority face.
+   */
+  public @State int getPriorityExpression() {
+    return priorityExpression;
+  }
+
+  /** Returns whether the tracking table entry holds a face from the latest detection. */
+  private boolean isCurrentFace(int entry) {
+    return trackedFaces.isUsed(entry) && trackedFaces.lastSeenAt(entry) == lastDetectedFrameId;
+  }
+}
@@ -0,0 +1,213 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity table of tracked faces keyed by their primitive tracking id.
+ *
+ * <p>Every entry records the frame it was last seen in, and entries that haven't been seen for
+ * {@code maxAgeFrames} frames are evicted, so the table's memory stays flat however many faces
+ * come and go. Entries live at stable indices between 0 and {@link #getCapacity()}, which callers
+ * can use to keep their own per-face state in parallel arrays. Lookups go through an
+ * open-addressing hash index with linear probing, so nothing is boxed or allocated after
+ * construction.
+ */
+public class FaceTrackingTable<T> {
+
+  /** Returned when a tracking id has no entry. */
+  public static final int NO_ENTRY = -1;
+
+  private static final int EMPTY_SLOT = -1;
+
+  private final int maxAgeFrames;
+  // Hash slots holding entry indices; twice the capacity keeps probe sequences short.
+  private final int[] slots;
+  private final int slotMask;
+
+  private final int[] ids;
+  private final long[] lastSeenFrames;
+  private final Object[] values;
+  private final boolean[] used;
+  private final int[] freeEntries;
+  private int freeCount;
+
+  /**
+   * @param capacity max number of faces tracked at once. When full, the least recently seen face
+   *     is evicted to make room.
+   * @param maxAgeFrames number of frames after which a face that hasn't been seen is evicted.
+   */
+  public FaceTrackingTable(int capacity, int maxAgeFrames) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1, was " + capacity);
+    }
+    this.maxAgeFrames = maxAgeFrames;
+    slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    slotMask = slots.length - 1;
+    Arrays.fill(slots, EMPTY_SLOT);
+
+    ids = new int[capacity];
+    lastSeenFrames = new long[capacity];
+    values = new Object[capacity];
+    used = new boolean[capacity];
+    freeEntries = new int[capacity];
+    for (int i = 0; i < capacity; i++) {
+      freeEntries[i] = capacity - 1 - i;
+    }
+    freeCount = capacity;
+  }
+
+  /**
+   * Records that the face was seen in {@code frame} and returns its entry index. A face that isn't
+   * tracked yet gets a new entry.
+   */
+  public int put(int trackingId, T value, long frame) {
+    int entry = indexOf(trackingId);
+    if (entry == NO_ENTRY) {
+      if (freeCount == 0) {
+        removeEntry(leastRecentlySeen());
+      }
+      entry = freeEntries[--freeCount];
+      used[entry] = true;
+      ids[entry] = trackingId;
+      int slot = slotOf(trackingId);
+      while (slots[slot] != EMPTY_SLOT) {
+        slot = (slot + 1) & slotMask;
+      }
+      slots[slot] = entry;
+    }
+    values[entry] = value;
+    lastSeenFrames[entry] = frame;
+    return entry;
+  }
+
+  /** Returns the entry index of the face, or {@link #NO_ENTRY} if it isn't tracked. */
+  public int indexOf(int trackingId) {
+    for (int slot = slotOf(trackingId); slots[slot] != EMPTY_SLOT; slot = (slot + 1) & slotMask) {
+      if (ids[slots[slot]] == trackingId) {
+        return slots[slot];
+      }
+    }
+    return NO_ENTRY;
+  }
+
+  /** Returns the value of the face, or null if it isn't tracked. */
+  public T get(int trackingId) {
+    int entry = indexOf(trackingId);
+    return entry == NO_ENTRY ? null : valueAt(entry);
+  }
+
+  /** Returns whether the face was seen in exactly the given frame. */
+  public boolean isSeenIn(int trackingId, long frame) {
+    int entry = indexOf(trackingId);
+    return entry != NO_ENTRY && lastSeenFrames[entry] == frame;
+  }
+
+  /** Stops tracking the face. Returns false if it wasn't tracked. */
+  public boolean remove(int trackingId) {
+    int entry = indexOf(trackingId);
+    if (entry == NO_ENTRY) {
+      return false;
+    }
+    removeEntry(entry);
+    return true;
+  }
+
+  /** Evicts every face not seen within {@code maxAgeFrames} of {@code currentFrame}. */
+  public void evictStale(long currentFrame) {
+    for (int entry = 0; entry < used.length; entry++) {
+      if (used[entry] && currentFrame - lastSeenFrames[entry] > maxAgeFrames) {
+        removeEntry(entry);
+      }
+    }
+  }
+
+  /** Stops tracking every face. */
+  public void clear() {
+    for (int entry = 0; entry < used.length; entry++) {
+      if (used[entry]) {
+        removeEntry(entry);
+      }
+    }
+  }
+
+  /** Returns the number of tracked faces. */
+  public int size() {
+    return used.length - freeCount;
+  }
+
+  /** Returns the number of entry indices; every entry index is below this value. */
+  public int getCapacity() {
+    return used.length;
+  }
+
+  /** Returns whether the entry index currently holds a face. */
+  public boolean isUsed(int entry) {
+    return used[entry];
+  }
+
+  public int idAt(int entry) {
+    return ids[entry];
+  }
+
+  @SuppressWarnings("unchecked")
+  public T valueAt(int entry) {
+    return (T) values[entry];
+  }
+
+  public long lastSeenAt(int entry) {
+    return lastSeenFrames[entry];
+  }
+
+  private int leastRecentlySeen() {
+    int oldest = NO_ENTRY;
+    for (int entry = 0; entry < used.length; entry++) {
+      if (used[entry] && (oldest == NO_ENTRY || lastSeenFrames[entry] < lastSeenFrames[oldest])) {
+        oldest = entry;
+      }
+    }
+    return oldest;
+  }
+
+  private void removeEntry(int entry) {
+    int slot = slotOf(ids[entry]);
+    while (slots[slot] != entry) {
+      slot = (slot + 1) & slotMask;
+    }
+    // Shift later members of the probe sequence back so that lookups never stop at a gap.
+    int gap = slot;
+    for (int next = (gap + 1) & slotMask; slots[next] != EMPTY_SLOT; next = (next + 1) & slotMask) {
+      int home = slotOf(ids[slots[next]]);
+      // Move the entry into the gap unless its home slot lies cyclically in (gap, next].
+      if (((next - home) & slotMask) >= ((next - gap) & slotMask)) {
+        slots[gap] = slots[next];
+        gap = next;
+      }
+    }
+    slots[gap] = EMPTY_SLOT;
+
+    used[entry] = false;
+    values[entry] = null;
+    freeEntries[freeCount++] = entry;
+  }
+
+  private int slotOf(int trackingId) {
+    // Tracking ids are small and sequential, so spread them with a multiplicative hash.
+    return (trackingId * 0x9E3779B9 >>> 16) & slotMask;
+  }
+}
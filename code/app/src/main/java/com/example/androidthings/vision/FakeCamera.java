@@ -0,0 +1,102 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stands in for a camera by producing synthetic YUV_420_888 frames: a gradient with a bright
+ * square moving across it, with the chroma planes interleaved like most camera HALs deliver them.
+ * The frames are rendered once and then cycled, and their timestamps follow the frame rate, so
+ * replaying them at their original pace imitates a camera.
+ */
+public class FakeCamera implements FrameSource {
+
+  // Number of distinct frames rendered; the square crosses the image once in this many frames.
+  private static final int RENDERED_FRAMES = 60;
+
+  private final int width;
+  private final int height;
+  private final long frameIntervalNs;
+  private final long frameCount;
+  private final ByteBuffer[] lumaPlanes = new ByteBuffer[RENDERED_FRAMES];
+  private final ByteBuffer chromaPlane;
+  private long nextFrame;
+  private boolean closed;
+
+  /**
+   * @param width width of the frames; must be even.
+   * @param height height of the frames; must be even.
+   * @param fps frame rate the timestamps follow.
+   * @param frameCount number of frames to produce, or -1 to produce frames until closed.
+   */
+  public FakeCamera(int width, int height, int fps, long frameCount) {
+    this.width = width;
+    this.height = height;
+    this.frameIntervalNs = 1_000_000_000L / fps;
+    this.frameCount = frameCount;
+
+    int squareSize = Math.max(1, height / 4);
+    int squareTop = (height - squareSize) / 2;
+    for (int i = 0; i < RENDERED_FRAMES; i++) {
+      int squareLeft = (width - squareSize) * i / (RENDERED_FRAMES - 1);
+      ByteBuffer luma = ByteBuffer.allocateDirect(width * height);
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          boolean inSquare =
+              x >= squareLeft
+                  && x < squareLeft + squareSize
+                  && y >= squareTop
+                  && y < squareTop + squareSize;
+          luma.put((byte) (inSquare ? 235 : 16 + (x + y) * 128 / (width + height)));
+        }
+      }
+      lumaPlanes[i] = luma;
+    }
+    // U and V interleaved at half resolution, with a hue that shifts across the image.
+    chromaPlane = ByteBuffer.allocateDirect(width * height / 2);
+    for (int y = 0; y < height / 2; y++) {
+      for (int x = 0; x < width / 2; x++) {
+        chromaPlane.put((byte) (96 + x * 64 / width));
+        chromaPlane.put((byte) (160 - y * 64 / height));
+      }
+    }
+  }
+
+  @Override
+  public boolean next(YuvFrame frame) {
+    if (closed || (frameCount >= 0 && nextFrame >= frameCount)) {
+      return false;
+    }
+    ByteBuffer luma = lumaPlanes[(int) (nextFrame % RENDERED_FRAMES)].duplicate();
+    luma.clear();
+    ByteBuffer u = chromaPlane.duplicate();
+    u.clear();
+    u.limit(u.capacity() - 1);
+    ByteBuffer v = chromaPlane.duplicate();
+    v.position(1);
+    v = v.slice();
+    frame.set(luma, u, v, width, height, width, width, 2, nextFrame * frameIntervalNs);
+    nextFrame++;
+    return true;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+}
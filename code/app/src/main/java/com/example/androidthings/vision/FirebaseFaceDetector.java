@@ -0,0 +1,123 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Rect;
+import android.util.Log;
+import com.google.firebase.ml.vision.FirebaseVision;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.ml.vision.common.FirebaseVisionImageMetadata;
+import com.google.firebase.ml.vision.face.FirebaseVisionFace;
+import com.google.firebase.ml.vision.face.FirebaseVisionFaceDetector;
+import com.google.firebase.ml.vision.face.FirebaseVisionFaceDetectorOptions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects faces with the on-device Firebase ML Kit face detector. {@link #detect} must always be
+ * called from the same thread.
+ */
+public class FirebaseFaceDetector implements FaceDetector {
+
+  private static final String TAG = FirebaseFaceDetector.class.getSimpleName();
+
+  private final FirebaseVisionFaceDetector detector;
+  // Bitmaps for inputs without NV21 data, cycled so that none is refilled while in use.
+  private final Bitmap[] bitmaps;
+  private int nextBitmap;
+  private FirebaseVisionImageMetadata nv21Metadata;
+  private int nv21Width;
+  private int nv21Height;
+
+  /** @param maxInFlight max number of detections that run at once. */
+  public FirebaseFaceDetector(int maxInFlight) {
+    FirebaseVisionFaceDetectorOptions options =
+        new FirebaseVisionFaceDetectorOptions.Builder()
+            .setClassificationType(FirebaseVisionFaceDetectorOptions.ALL_CLASSIFICATIONS)
+            .setTrackingEnabled(true)
+            .build();
+    detector = FirebaseVision.getInstance().getVisionFaceDetector(options);
+    bitmaps = new Bitmap[maxInFlight + 1];
+  }
+
+  @Override
+  public void detect(Input input, Callback callback) {
+    detector
+        .detectInImage(toFirebaseImage(input))
+        .addOnSuccessListener(faces -> callback.onFacesDetected(toFaces(faces)))
+        .addOnFailureListener(callback::onDetectionFailed);
+  }
+
+  @Override
+  public void close() {
+    try {
+      detector.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to close face detector", e);
+    }
+  }
+
+  private FirebaseVisionImage toFirebaseImage(Input input) {
+    int width = input.getWidth();
+    int height = input.getHeight();
+    byte[] nv21 = input.getNv21();
+    if (nv21 != null) {
+      if (nv21Metadata == null || nv21Width != width || nv21Height != height) {
+        nv21Metadata =
+            new FirebaseVisionImageMetadata.Builder()
+                .setWidth(width)
+                .setHeight(height)
+                .setFormat(FirebaseVisionImageMetadata.IMAGE_FORMAT_NV21)
+                .setRotation(FirebaseVisionImageMetadata.ROTATION_0)
+                .build();
+        nv21Width = width;
+        nv21Height = height;
+      }
+      return FirebaseVisionImage.fromByteArray(nv21, nv21Metadata);
+    }
+
+    Bitmap bitmap = bitmaps[nextBitmap];
+    if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+      bitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+      bitmaps[nextBitmap] = bitmap;
+    }
+    nextBitmap = (nextBitmap + 1) % bitmaps.length;
+    bitmap.setPixels(input.getArgb(), 0, width, 0, 0, width, height);
+    return FirebaseVisionImage.fromBitmap(bitmap);
+  }
+
+  private static List<Face> toFaces(List<FirebaseVisionFace> firebaseFaces) {
+    List<Face> faces = new ArrayList<>(firebaseFaces.size());
+    for (FirebaseVisionFace face : firebaseFaces) {
+      Rect box = face.getBoundingBox();
+      faces.add(
+          new Face(
+              face.getTrackingId(),
+              box.left,
+              box.top,
+              box.right,
+              box.bottom,
+              face.getSmilingProbability(),
+              face.getLeftEyeOpenProbability(),
+              face.getRightEyeOpenProbability()));
+    }
+    return faces;
+  }
+}
@@ -0,0 +1,30 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** A sequence of YUV frames that is read one frame at a time, such as a recording. */
+public interface FrameSource extends Closeable {
+
+  /**
+   * Points the frame at the next frame of the sequence. Returns false once there are no more
+   * frames.
+   */
+  boolean next(YuvFrame frame) throws IOException;
+}
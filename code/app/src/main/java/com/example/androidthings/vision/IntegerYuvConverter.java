@@ -0,0 +1,85 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reference converter that computes every pixel with integer arithmetic. Other converters must
+ * produce exactly the same output as this one.
+ */
+public class IntegerYuvConverter implements YuvConverter {
+
+  // This value is 2 ^ 18 - 1, and is used to clamp the RGB values before their ranges
+  // are normalized to eight bits.
+  static final int MAX_CHANNEL_VALUE = 262143;
+
+  @Override
+  public void convertRows(YuvFrame frame, int startRow, int endRow, int[] out) {
+    final ByteBuffer yData = frame.yPlane;
+    final ByteBuffer uData = frame.uPlane;
+    final ByteBuffer vData = frame.vPlane;
+    final int width = frame.width;
+    final int yRowStride = frame.yRowStride;
+    final int uvRowStride = frame.uvRowStride;
+    final int uvPixelStride = frame.uvPixelStride;
+
+    int i = startRow * width;
+    for (int y = startRow; y < endRow; y++) {
+      int pY = yRowStride * y;
+      int uvRowStart = uvRowStride * (y >> 1);
+      int pU = uvRowStart;
+      int pV = uvRowStart;
+
+      for (int x = 0; x < width; x++) {
+        int uvOffset = (x >> 1) * uvPixelStride;
+        out[i++] =
+            YUV2RGB(
+                convertByteToInt(yData, pY + x),
+                convertByteToInt(uData, pU + uvOffset),
+                convertByteToInt(vData, pV + uvOffset));
+      }
+    }
+  }
+
+  static int YUV2RGB(int nY, int nU, int nV) {
+    nY -= 16;
+    nU -= 128;
+    nV -= 128;
+    if (nY < 0) {
+      nY = 0;
+    }
+
+    int nR = (int) (1192 * nY + 1634 * nV);
+    int nG = (int) (1192 * nY - 833 * nV - 400 * nU);
+    int nB = (int) (1192 * nY + 2066 * nU);
+
+    nR = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nR));
+    nG = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nG));
+    nB = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nB));
+
+    nR = (nR >> 10) & 0xff;
+    nG = (nG >> 10) & 0xff;
+    nB = (nB >> 10) & 0xff;
+
+    return 0xff000000 | (nR << 16) | (nG << 8) | nB;
+  }
+
+  private static int convertByteToInt(ByteBuffer buffer, int pos) {
+    return buffer.get(pos) & 0xFF;
+  }
+}
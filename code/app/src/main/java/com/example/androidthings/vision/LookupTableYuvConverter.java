@@ -0,0 +1,95 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converter that replaces the per-pixel multiplies and clamps of {@link IntegerYuvConverter} with
+ * precomputed tables. The output is bit-identical to the reference converter.
+ */
+public class LookupTableYuvConverter implements YuvConverter {
+
+  // Every channel sum lies within [-264448, 547270], i.e. [-259, 534] once shifted down by ten
+  // bits, so this offset keeps all indices into CLAMP non-negative.
+  private static final int CLAMP_OFFSET = 512;
+
+  private static final int[] Y_TABLE = new int[256];
+  private static final int[] RV_TABLE = new int[256];
+  private static final int[] GV_TABLE = new int[256];
+  private static final int[] GU_TABLE = new int[256];
+  private static final int[] BU_TABLE = new int[256];
+  private static final int[] CLAMP = new int[CLAMP_OFFSET * 3];
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      Y_TABLE[i] = 1192 * Math.max(0, i - 16);
+      RV_TABLE[i] = 1634 * (i - 128);
+      GV_TABLE[i] = -833 * (i - 128);
+      GU_TABLE[i] = -400 * (i - 128);
+      BU_TABLE[i] = 2066 * (i - 128);
+    }
+    // Clamping to [0, MAX_CHANNEL_VALUE] and then shifting is the same as shifting and then
+    // clamping to [0, 255], which lets the table be indexed by the shifted sum.
+    for (int i = 0; i < CLAMP.length; i++) {
+      CLAMP[i] = Math.min(0xff, Math.max(0, i - CLAMP_OFFSET));
+    }
+  }
+
+  @Override
+  public void convertRows(YuvFrame frame, int startRow, int endRow, int[] out) {
+    final ByteBuffer yData = frame.yPlane;
+    final ByteBuffer uData = frame.uPlane;
+    final ByteBuffer vData = frame.vPlane;
+    final int width = frame.width;
+    final int yRowStride = frame.yRowStride;
+    final int uvRowStride = frame.uvRowStride;
+    final int uvPixelStride = frame.uvPixelStride;
+
+    final int[] clamp = CLAMP;
+    int i = startRow * width;
+    for (int y = startRow; y < endRow; y++) {
+      int pY = yRowStride * y;
+      int pUV = uvRowStride * (y >> 1);
+
+      for (int x = 0; x < width; x += 2, pUV += uvPixelStride) {
+        // Both pixels of a horizontal pair share the same chroma sample.
+        int u = uData.get(pUV) & 0xff;
+        int v = vData.get(pUV) & 0xff;
+        int r = RV_TABLE[v];
+        int g = GV_TABLE[v] + GU_TABLE[u];
+        int b = BU_TABLE[u];
+
+        int luma = Y_TABLE[yData.get(pY + x) & 0xff];
+        out[i++] =
+            0xff000000
+                | (clamp[((luma + r) >> 10) + CLAMP_OFFSET] << 16)
+                | (clamp[((luma + g) >> 10) + CLAMP_OFFSET] << 8)
+                | clamp[((luma + b) >> 10) + CLAMP_OFFSET];
+
+        if (x + 1 < width) {
+          luma = Y_TABLE[yData.get(pY + x + 1) & 0xff];
+          out[i++] =
+              0xff000000
+                  | (clamp[((luma + r) >> 10) + CLAMP_OFFSET] << 16)
+                  | (clamp[((luma + g) >> 10) + CLAMP_OFFSET] << 8)
+                  | clamp[((luma + b) >> 10) + CLAMP_OFFSET];
+        }
+      }
+    }
+  }
+}
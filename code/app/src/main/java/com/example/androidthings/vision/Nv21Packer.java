@@ -0,0 +1,68 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs a {@link YuvFrame} into an NV21 byte array: the full luma plane followed by interleaved V
+ * and U samples at quarter resolution.
+ */
+public final class Nv21Packer {
+
+  private Nv21Packer() {}
+
+  /** Returns the number of bytes an NV21 frame of the given size occupies. */
+  public static int bufferSize(int width, int height) {
+    return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+  }
+
+  /**
+   * Packs the frame into {@code out}, which must hold at least {@link #bufferSize} bytes. Moves the
+   * position of the frame's luma buffer, but reads the chroma planes in place.
+   */
+  public static void pack(YuvFrame frame, byte[] out) {
+    final int width = frame.width;
+    final int height = frame.height;
+
+    ByteBuffer yPlane = frame.yPlane;
+    if (frame.yRowStride == width) {
+      yPlane.position(0);
+      yPlane.get(out, 0, width * height);
+    } else {
+      for (int y = 0; y < height; y++) {
+        yPlane.position(y * frame.yRowStride);
+        yPlane.get(out, y * width, width);
+      }
+    }
+
+    final ByteBuffer uPlane = frame.uPlane;
+    final ByteBuffer vPlane = frame.vPlane;
+    final int uvRowStride = frame.uvRowStride;
+    final int uvPixelStride = frame.uvPixelStride;
+    final int chromaWidth = (width + 1) / 2;
+    final int chromaHeight = (height + 1) / 2;
+    int i = width * height;
+    for (int y = 0; y < chromaHeight; y++) {
+      int pUV = y * uvRowStride;
+      for (int x = 0; x < chromaWidth; x++, pUV += uvPixelStride) {
+        out[i++] = vPlane.get(pUV);
+        out[i++] = uPlane.get(pUV);
+      }
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Converter that splits a frame into horizontal bands of rows and converts them concurrently with
+ * another converter. The calling thread converts the last band itself and returns once every band
+ * is done, so the output can be used as soon as this converter returns.
+ */
+public class ParallelYuvConverter implements YuvConverter {
+
+  private final YuvConverter delegate;
+  private final Executor executor;
+  private final Band[] bands;
+  private final Semaphore finishedBands = new Semaphore(0);
+
+  private YuvFrame frame;
+  private int[] out;
+  private volatile RuntimeException bandFailure;
+
+  /**
+   * @param delegate converter used for every band.
+   * @param executor runs all bands but the last one; should have at least {@code bandCount - 1}
+   *     threads.
+   * @param bandCount number of bands, usually the number of available cores.
+   */
+  public ParallelYuvConverter(YuvConverter delegate, Executor executor, int bandCount) {
+    if (bandCount < 1) {
+      throw new IllegalArgumentException("bandCount must be at least 1, was " + bandCount);
+    }
+    this.delegate = delegate;
+    this.executor = executor;
+    bands = new Band[bandCount];
+    for (int i = 0; i < bandCount; i++) {
+      bands[i] = new Band();
+    }
+  }
+
+  @Override
+  public synchronized void convertRows(YuvFrame frame, int startRow, int endRow, int[] out) {
+    int rows = endRow - startRow;
+    int bandCount = Math.min(bands.length, Math.max(1, rows / 2));
+    if (bandCount == 1) {
+      delegate.convertRows(frame, startRow, endRow, out);
+      return;
+    }
+
+    this.frame = frame;
+    this.out = out;
+    bandFailure = null;
+
+    // Bands start on even rows so that no chroma row is shared between two bands.
+    int rowsPerBand = ((rows + bandCount - 1) / bandCount + 1) & ~1;
+    int bandStart = startRow;
+    int submitted = 0;
+    for (int i = 0; i < bandCount - 1 && bandStart + rowsPerBand < endRow; i++) {
+      bands[i].startRow = bandStart;
+      bands[i].endRow = bandStart + rowsPerBand;
+      try {
+        executor.execute(bands[i]);
+      } catch (RejectedExecutionException e) {
+        // The executor is shutting down, so convert this band here instead.
+        bands[i].run();
+      }
+      bandStart += rowsPerBand;
+      submitted++;
+    }
+
+    try {
+      delegate.convertRows(frame, bandStart, endRow, out);
+    } finally {
+      finishedBands.acquireUninterruptibly(submitted);
+      this.frame = null;
+      this.out = null;
+    }
+
+    RuntimeException failure = bandFailure;
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** A reusable task that converts one band of the current frame. */
+  private class Band implements Runnable {
+
+    int startRow;
+    int endRow;
+
+    @Override
+    public void run() {
+      try {
+        delegate.convertRows(frame, startRow, endRow, out);
+      } catch (RuntimeException e) {
+        bandFailure = e;
+      } finally {
+        finishedBands.release();
+      }
+    }
+  }
+}
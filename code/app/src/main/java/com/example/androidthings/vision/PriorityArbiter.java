@@ -0,0 +1,140 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.example.androidthings.Flower.State;
+
+/**
+ * Picks one priority face across the cameras watching the flower and drives the flower's state
+ * with it. Each camera's {@link FaceTracker} reports after every frame; the flower is idle once no
+ * camera sees a face. Cameras that stop reporting are ignored after a while.
+ *
+ * <p>The camera whose priority face has priority keeps it for as long as that face is seen.
+ * Otherwise the largest of the cameras' priority faces, which is most likely the closest person,
+ * takes over.
+ */
+public class PriorityArbiter {
+
+  /** No camera has the priority face. */
+  public static final int NO_CAMERA = -1;
+
+  // Time after which the faces reported by a camera that stopped reporting are ignored.
+  private static final long STALE_NS = 1_000_000_000L;
+
+  /** Receives the states the flower should be in. */
+  public interface StateListener {
+
+    void onStateChanged(@State int state);
+
+    /**
+     * Receives the decision for the latest frame: IDLE or DETECTING, and the expression of the
+     * priority face, which is DETECTING if there is no expression or no priority face.
+     *
+     * @param priorityCamera the camera that sees the priority face, or {@link #NO_CAMERA}.
+     * @param priorityFace the priority face, in that camera's image, or null if no camera has one.
+     */
+    default void onDecision(
+        @State int state, @State int expression, int priorityCamera, Face priorityFace) {
+      onStateChanged(state);
+      if (expression != State.DETECTING) {
+        onStateChanged(expression);
+      }
+    }
+  }
+
+  private final StateListener stateListener;
+  private final int[] faceCounts;
+  private final Face[] priorityFaces;
+  private final int[] expressions;
+  private final long[] reportedNs;
+  private final boolean[] reported;
+  private int priorityCamera = NO_CAMERA;
+
+  /** @param cameraCount number of cameras, which report with indices from 0 to cameraCount - 1. */
+  public PriorityArbiter(int cameraCount, StateListener stateListener) {
+    this.stateListener = stateListener;
+    faceCounts = new int[cameraCount];
+    priorityFaces = new Face[cameraCount];
+    expressions = new int[cameraCount];
+    reportedNs = new long[cameraCount];
+    reported = new boolean[cameraCount];
+  }
+
+  /** Returns the number of cameras. */
+  public int getCameraCount() {
+    return faceCounts.length;
+  }
+
+  /**
+   * Takes the result of a camera's latest frame, picks the priority face across all cameras and
+   * sets the flower's state.
+   *
+   * @param nowNs the current time, as returned by {@link System#nanoTime()}.
+   */
+  public synchronized void update(int camera, FaceTracker tracker, long nowNs) {
+    faceCounts[camera] = tracker.getCurrentFaceCount();
+    priorityFaces[camera] = tracker.getPriorityFace();
+    expressions[camera] = tracker.getPriorityExpression();
+    reportedNs[camera] = nowNs;
+    reported[camera] = true;
+
+    int faceCount = 0;
+    for (int i = 0; i < faceCounts.length; i++) {
+      if (isFresh(i, nowNs)) {
+        faceCount += faceCounts[i];
+      }
+    }
+
+    if (priorityCamera == NO_CAMERA || !hasPriorityFace(priorityCamera, nowNs)) {
+      priorityCamera = NO_CAMERA;
+      long largestArea = -1;
+      for (int i = 0; i < priorityFaces.length; i++) {
+        if (hasPriorityFace(i, nowNs)) {
+          long area = (long) priorityFaces[i].getWidth() * priorityFaces[i].getHeight();
+          if (area > largestArea) {
+            largestArea = area;
+            priorityCamera = i;
+          }
+        }
+      }
+    }
+
+    if (priorityCamera == NO_CAMERA) {
+      stateListener.onDecision(
+          faceCount == 0 ? State.IDLE : State.DETECTING, State.DETECTING, NO_CAMERA, null);
+    } else {
+      stateListener.onDecision(
+          State.DETECTING,
+          expressions[priorityCamera],
+          priorityCamera,
+          priorityFaces[priorityCamera]);
+    }
+  }
+
+  /** Returns the camera whose priority face has priority, or {@link #NO_CAMERA}. */
+  public synchronized int getPriorityCamera() {
+    return priorityCamera;
+  }
+
+  private boolean isFresh(int camera, long nowNs) {
+    return reported[camera] && nowNs - reportedNs[camera] < STALE_NS;
+  }
+
+  private boolean hasPriorityFace(int camera, long nowNs) {
+    return priorityFaces[camera] != null && isFresh(camera, nowNs);
+  }
+}
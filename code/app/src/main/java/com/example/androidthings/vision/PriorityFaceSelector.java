@@ -0,0 +1,37 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Strategy that picks the priority face, the one the flower reacts to, from the faces of a frame.
+ * The faces are offered one at a time between {@link #begin} and {@link #select}, so a selection
+ * takes a single pass and needs no collection.
+ */
+public interface PriorityFaceSelector {
+
+  /** Tracking id that stands for no priority face. */
+  int NO_PRIORITY = Integer.MAX_VALUE;
+
+  /** Starts a selection. {@code currentPriorityId} is the previous selection or NO_PRIORITY. */
+  void begin(int currentPriorityId);
+
+  /** Offers one face of the frame, given by its tracking id and bounding box. */
+  void offer(int trackingId, int centerX, int centerY, int width, int height);
+
+  /** Returns the tracking id of the priority face, or {@link #NO_PRIORITY} if there is none. */
+  int select();
+}
@@ -0,0 +1,99 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Formats probabilities with two decimals, like {@code String.format("%.2f", probability)}, without
+ * allocating. The text of the values detectors report, 0 to 1 and {@link
+ * Face#UNCOMPUTED_PROBABILITY}, is built once and shared.
+ */
+public final class ProbabilityText {
+
+  /** Size of a buffer that fits the text of any float. */
+  public static final int MAX_LENGTH = 48;
+
+  // Values at or beyond this are formatted by String.format, since they don't fit a long once
+  // scaled to hundredths.
+  private static final float MAX_INLINE_VALUE = 1e7f;
+
+  // Text of 0.00, 0.01, ..., 1.00.
+  private static final char[][] CACHED = new char[101][];
+  private static final char[] UNCOMPUTED = "-1.00".toCharArray();
+
+  static {
+    for (int i = 0; i < CACHED.length; i++) {
+      char[] text = new char[4];
+      format(i, false, text);
+      CACHED[i] = text;
+    }
+  }
+
+  private ProbabilityText() {}
+
+  /** Returns the shared text of the probability, or null if it isn't one of the cached values. */
+  public static char[] cached(float probability) {
+    if (probability >= 0 && probability <= 1) {
+      return CACHED[(int) Math.round(probability * 100.0)];
+    }
+    return probability == Face.UNCOMPUTED_PROBABILITY ? UNCOMPUTED : null;
+  }
+
+  /**
+   * Writes the probability with two decimals to the start of {@code out}, which must hold at least
+   * {@link #MAX_LENGTH} chars, and returns the length of the text.
+   */
+  public static int format(float probability, char[] out) {
+    char[] text = cached(probability);
+    if (text != null) {
+      System.arraycopy(text, 0, out, 0, text.length);
+      return text.length;
+    }
+    if (!(Math.abs(probability) < MAX_INLINE_VALUE)) {
+      // NaN, infinities and huge values are rare enough to be formatted the slow way.
+      String formatted = String.format("%.2f", probability);
+      formatted.getChars(0, formatted.length(), out, 0);
+      return formatted.length();
+    }
+    // Rounds half away from zero, and values that round to zero keep their sign, as they do with
+    // String.format.
+    long hundredths = Math.round(Math.abs(probability) * 100.0);
+    return format(hundredths, probability < 0, out);
+  }
+
+  /** Writes a non-negative number of hundredths to the start of {@code out}. */
+  private static int format(long hundredths, boolean negative, char[] out) {
+    long whole = hundredths / 100;
+    int digits = 1;
+    for (long rest = whole / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    int length = (negative ? 1 : 0) + digits + 3;
+    int i = length;
+    int fraction = (int) (hundredths % 100);
+    out[--i] = (char) ('0' + fraction % 10);
+    out[--i] = (char) ('0' + fraction / 10);
+    out[--i] = '.';
+    do {
+      out[--i] = (char) ('0' + whole % 10);
+      whole /= 10;
+    } while (whole > 0);
+    if (negative) {
+      out[--i] = '-';
+    }
+    return length;
+  }
+}
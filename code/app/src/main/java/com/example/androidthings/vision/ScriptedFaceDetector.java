@@ -0,0 +1,89 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Deterministic stand-in for a real face detector that ignores the image and replays a script of
+ * detection results, one per call, looping at the end. Results are delivered synchronously, so the
+ * tracking, priority and state logic can be driven at full speed on a plain JVM.
+ */
+public class ScriptedFaceDetector implements FaceDetector {
+
+  private final List<List<Face>> script;
+  private int nextResult;
+
+  /** @param script the faces found by each successive detection. */
+  public ScriptedFaceDetector(List<List<Face>> script) {
+    if (script.isEmpty()) {
+      throw new IllegalArgumentException("script must contain at least one result");
+    }
+    this.script = script;
+  }
+
+  /**
+   * Returns a detector whose script walks {@code faceCount} faces back and forth across an image of
+   * the given size over {@code length} detections. Each face smiles for a while every 60
+   * detections, at a different time for every face, and one face winks now and then.
+   */
+  public static ScriptedFaceDetector walkingFaces(
+      int faceCount, int length, int imageWidth, int imageHeight) {
+    List<List<Face>> script = new ArrayList<>(length);
+    int size = imageHeight / 4;
+    for (int i = 0; i < length; i++) {
+      List<Face> faces = new ArrayList<>(faceCount);
+      for (int id = 0; id < faceCount; id++) {
+        // Triangle wave so every face turns around at the edges of the image.
+        int span = imageWidth - size;
+        int position = (i * (id + 1) * 4 + id * span / Math.max(1, faceCount)) % (2 * span);
+        int left = position < span ? position : 2 * span - position;
+        int top = (imageHeight - size) / 2 + (id % 3 - 1) * size / 2;
+        // Long enough to outlast the dwell time the pipeline holds an expression for.
+        boolean smiling = (i + id * 15) % 60 < 20;
+        boolean winking = id == 0 && i % 90 >= 70;
+        faces.add(
+            new Face(
+                id,
+                left,
+                top,
+                left + size,
+                top + size,
+                smiling ? .9f : .1f,
+                winking ? .05f : .95f,
+                .95f));
+      }
+      script.add(Collections.unmodifiableList(faces));
+    }
+    return new ScriptedFaceDetector(script);
+  }
+
+  @Override
+  public void detect(Input input, Callback callback) {
+    List<Face> faces;
+    synchronized (this) {
+      faces = script.get(nextResult);
+      nextResult = (nextResult + 1) % script.size();
+    }
+    callback.onFacesDetected(faces);
+  }
+
+  @Override
+  public void close() {}
+}
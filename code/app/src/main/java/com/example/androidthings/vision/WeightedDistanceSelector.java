@@ -0,0 +1,123 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Picks the face closest to the center of the image, weighting horizontal and vertical distance
+ * differently. Only faces that are large enough and horizontally within bounds qualify, and a lone
+ * face is always picked.
+ *
+ * <p>The current priority face keeps priority for as long as it still qualifies. With a
+ * hysteresis margin it keeps qualifying within bounds widened by that many pixels, and while its
+ * bounding box grown by the margin on every side is large enough. A face hovering at the edge of
+ * a bound then doesn't flap in and out of priority.
+ */
+public class WeightedDistanceSelector implements PriorityFaceSelector {
+
+  // Distances are compared squared and scaled to integer weights, which orders them exactly like
+  // the weighted euclidean distance.
+  private static final int WEIGHT_SCALE = 1000;
+
+  private final int boundLeft;
+  private final int boundRight;
+  private final int smallBoxLimit;
+  private final int imageCenterX;
+  private final int imageCenterY;
+  private final long weightX;
+  private final long weightY;
+  private final int hysteresisPx;
+
+  private int currentPriorityId;
+  private boolean currentStillQualifies;
+  private int offeredCount;
+  private int firstOfferedId;
+  private int closestId;
+  private long closestDistance;
+
+  /**
+   * @param boundLeft qualifying faces are centered right of this x coordinate.
+   * @param boundRight qualifying faces are centered left of this x coordinate.
+   * @param smallBoxLimit qualifying faces have a larger bounding box area than this.
+   * @param weight weight of the horizontal distance; the vertical distance gets 1 - weight.
+   * @param hysteresisPx margin by which the current priority face may exceed the bounds; 0 keeps it
+   *     only while it strictly qualifies.
+   */
+  public WeightedDistanceSelector(
+      int boundLeft,
+      int boundRight,
+      int smallBoxLimit,
+      int imageCenterX,
+      int imageCenterY,
+      double weight,
+      int hysteresisPx) {
+    this.boundLeft = boundLeft;
+    this.boundRight = boundRight;
+    this.smallBoxLimit = smallBoxLimit;
+    this.imageCenterX = imageCenterX;
+    this.imageCenterY = imageCenterY;
+    this.weightX = Math.round(weight * WEIGHT_SCALE);
+    this.weightY = WEIGHT_SCALE - weightX;
+    this.hysteresisPx = hysteresisPx;
+  }
+
+  @Override
+  public void begin(int currentPriorityId) {
+    this.currentPriorityId = currentPriorityId;
+    currentStillQualifies = false;
+    offeredCount = 0;
+    firstOfferedId = NO_PRIORITY;
+    closestId = NO_PRIORITY;
+    closestDistance = Long.MAX_VALUE;
+  }
+
+  @Override
+  public void offer(int trackingId, int centerX, int centerY, int width, int height) {
+    if (offeredCount++ == 0) {
+      firstOfferedId = trackingId;
+    }
+    int area = width * height;
+
+    if (trackingId == currentPriorityId) {
+      int margin = hysteresisPx;
+      currentStillQualifies =
+          centerX > boundLeft - margin
+              && centerX < boundRight + margin
+              && (width + 2 * margin) * (height + 2 * margin) >= smallBoxLimit;
+    }
+
+    if (area > smallBoxLimit && centerX > boundLeft && centerX < boundRight) {
+      long dx = centerX - imageCenterX;
+      long dy = centerY - imageCenterY;
+      long distance = weightX * dx * dx + weightY * dy * dy;
+      if (distance < closestDistance) {
+        closestDistance = distance;
+        closestId = trackingId;
+      }
+    }
+  }
+
+  @Override
+  public int select() {
+    if (offeredCount == 1) {
+      return firstOfferedId;
+    }
+    if (currentStillQualifies) {
+      return currentPriorityId;
+    }
+    return closestId;
+  }
+}
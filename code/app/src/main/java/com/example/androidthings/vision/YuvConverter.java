@@ -0,0 +1,35 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Converts a YUV_420_888 frame into packed ARGB_8888 pixels. Converters read the planes in place
+ * and honor their row and pixel strides.
+ */
+public interface YuvConverter {
+
+  /** Converts the frame into {@code out}, which must hold at least width * height pixels. */
+  default void convert(YuvFrame frame, int[] out) {
+    convertRows(frame, 0, frame.height, out);
+  }
+
+  /**
+   * Converts the rows in [{@code startRow}, {@code endRow}) into the matching rows of {@code out}.
+   * Calls for disjoint row ranges may run concurrently.
+   */
+  void convertRows(YuvFrame frame, int startRow, int endRow, int[] out);
+}
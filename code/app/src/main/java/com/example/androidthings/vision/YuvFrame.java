@@ -0,0 +1,118 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.media.Image;
+import java.nio.ByteBuffer;
+
+/**
+ * The planes and layout of a single YUV_420_888 frame. The planes are referenced rather than
+ * copied, so a frame built from an {@link Image} is only valid until that image is closed.
+ */
+public class YuvFrame {
+
+  ByteBuffer yPlane;
+  ByteBuffer uPlane;
+  ByteBuffer vPlane;
+  int width;
+  int height;
+  int yRowStride;
+  int uvRowStride;
+  int uvPixelStride;
+  long timestampNs;
+
+  /** Points this frame at the planes of the given camera image. */
+  public YuvFrame set(Image image) {
+    Image.Plane[] planes = image.getPlanes();
+    return set(
+        planes[0].getBuffer(),
+        planes[1].getBuffer(),
+        planes[2].getBuffer(),
+        image.getWidth(),
+        image.getHeight(),
+        planes[0].getRowStride(),
+        planes[1].getRowStride(),
+        planes[1].getPixelStride(),
+        image.getTimestamp());
+  }
+
+  /** Points this frame at the given planes. */
+  public YuvFrame set(
+      ByteBuffer yPlane,
+      ByteBuffer uPlane,
+      ByteBuffer vPlane,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      long timestampNs) {
+    this.yPlane = yPlane;
+    this.uPlane = uPlane;
+    this.vPlane = vPlane;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+    this.timestampNs = timestampNs;
+    return this;
+  }
+
+  /** Drops the references to the planes so they can be released. */
+  public void clear() {
+    yPlane = null;
+    uPlane = null;
+    vPlane = null;
+  }
+
+  public ByteBuffer getYPlane() {
+    return yPlane;
+  }
+
+  public ByteBuffer getUPlane() {
+    return uPlane;
+  }
+
+  public ByteBuffer getVPlane() {
+    return vPlane;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getYRowStride() {
+    return yRowStride;
+  }
+
+  public int getUvRowStride() {
+    return uvRowStride;
+  }
+
+  public int getUvPixelStride() {
+    return uvPixelStride;
+  }
+
+  public long getTimestampNs() {
+    return timestampNs;
+  }
+}
@@ -0,0 +1,145 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the frames of a recording made by {@link YuvFrameRecorder}. The frames' planes are views
+ * of the memory-mapped file, so reading a frame copies nothing and the planes stay valid for as
+ * long as they are referenced.
+ */
+public class YuvFrameReader implements FrameSource {
+
+  // Size of the file region mapped at once, unless a single frame is larger.
+  private static final int MAP_WINDOW_BYTES = 64 << 20;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long size;
+  private MappedByteBuffer window;
+  private long windowStart;
+  // Offset in the file of the next frame.
+  private long position;
+
+  public YuvFrameReader(File path) throws IOException {
+    file = new RandomAccessFile(path, "r");
+    channel = file.getChannel();
+    size = channel.size();
+    try {
+      if (size < YuvFrameRecorder.FILE_HEADER_BYTES) {
+        throw new IOException("Not a frame recording: " + path);
+      }
+      ByteBuffer header = map(0, YuvFrameRecorder.FILE_HEADER_BYTES);
+      if (header.getInt() != YuvFrameRecorder.MAGIC) {
+        throw new IOException("Not a frame recording: " + path);
+      }
+      int version = header.getInt();
+      if (version != YuvFrameRecorder.VERSION) {
+        throw new IOException("Unsupported recording version " + version + ": " + path);
+      }
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+    position = YuvFrameRecorder.FILE_HEADER_BYTES;
+  }
+
+  /**
+   * Points the frame at the next recorded frame. Returns false at the end of the recording,
+   * including when the last frame was cut short.
+   */
+  @Override
+  public boolean next(YuvFrame frame) throws IOException {
+    if (size - position < YuvFrameRecorder.FRAME_HEADER_BYTES) {
+      return false;
+    }
+    ByteBuffer header = map(position, YuvFrameRecorder.FRAME_HEADER_BYTES);
+    int width = header.getInt();
+    int height = header.getInt();
+    int yRowStride = header.getInt();
+    int uvRowStride = header.getInt();
+    int uvPixelStride = header.getInt();
+    long timestampNs = header.getLong();
+    int yLength = header.getInt();
+    int uLength = header.getInt();
+    int vLength = header.getInt();
+    int frameBytes = YuvFrameRecorder.FRAME_HEADER_BYTES + yLength + uLength + vLength;
+    if (size - position < frameBytes) {
+      return false;
+    }
+
+    ByteBuffer planes = map(position, frameBytes);
+    planes.position(planes.position() + YuvFrameRecorder.FRAME_HEADER_BYTES);
+    ByteBuffer yPlane = slice(planes, yLength);
+    ByteBuffer uPlane = slice(planes, uLength);
+    ByteBuffer vPlane = slice(planes, vLength);
+    frame.set(
+        yPlane,
+        uPlane,
+        vPlane,
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        timestampNs);
+    position += frameBytes;
+    return true;
+  }
+
+  /** Starts reading again from the first frame. */
+  public void rewind() {
+    position = YuvFrameRecorder.FILE_HEADER_BYTES;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    file.close();
+  }
+
+  /**
+   * Returns a view of the file positioned at {@code offset} with at least {@code length} bytes
+   * remaining, mapping a new window if the current one doesn't cover them.
+   */
+  private ByteBuffer map(long offset, int length) throws IOException {
+    if (window == null
+        || offset < windowStart
+        || offset + length > windowStart + window.capacity()) {
+      long windowSize = Math.max(length, Math.min(MAP_WINDOW_BYTES, size - offset));
+      window = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowSize);
+      windowStart = offset;
+    }
+    ByteBuffer view = window.duplicate();
+    view.position((int) (offset - windowStart));
+    return view;
+  }
+
+  /** Returns the next {@code length} bytes of the buffer as a buffer of their own. */
+  private static ByteBuffer slice(ByteBuffer buffer, int length) {
+    ByteBuffer plane = buffer.slice();
+    plane.limit(length);
+    buffer.position(buffer.position() + length);
+    return plane;
+  }
+}
@@ -0,0 +1,131 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends YUV_420_888 frames to a file through a memory-mapped window, so recording a frame is a
+ * plain memory copy. Recordings are read back with {@link YuvFrameReader}.
+ *
+ * <p>The file starts with {@link #MAGIC} and {@link #VERSION}. Each frame follows as its width,
+ * height, luma row stride, chroma row stride, chroma pixel stride, timestamp and the lengths of its
+ * Y, U and V planes, then the bytes of those planes. All values are big-endian.
+ */
+public class YuvFrameRecorder implements Closeable {
+
+  static final int MAGIC = 0x59555652; // "YUVR"
+  static final int VERSION = 1;
+  static final int FILE_HEADER_BYTES = 8;
+  static final int FRAME_HEADER_BYTES = 8 * 4 + 8;
+
+  // Size of the file region mapped at once. The file grows by this much whenever it fills up.
+  private static final int MAP_WINDOW_BYTES = 32 << 20;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private MappedByteBuffer window;
+  // Offset in the file where the next frame is written.
+  private long position;
+  private int frameCount;
+  private boolean closed;
+
+  /** Creates the recording, replacing the file if it exists. */
+  public YuvFrameRecorder(File path) throws IOException {
+    file = new RandomAccessFile(path, "rw");
+    file.setLength(0);
+    channel = file.getChannel();
+    ensureMapped(FILE_HEADER_BYTES);
+    window.putInt(MAGIC).putInt(VERSION);
+    position = FILE_HEADER_BYTES;
+  }
+
+  /**
+   * Appends a frame. The frame's planes are read from index 0 to their limit, and their positions
+   * are left as they were. Frames written after {@link #close()} are ignored.
+   */
+  public synchronized void write(YuvFrame frame) throws IOException {
+    if (closed) {
+      return;
+    }
+    int yLength = frame.yPlane.limit();
+    int uLength = frame.uPlane.limit();
+    int vLength = frame.vPlane.limit();
+    int frameBytes = FRAME_HEADER_BYTES + yLength + uLength + vLength;
+    ensureMapped(frameBytes);
+    window
+        .putInt(frame.width)
+        .putInt(frame.height)
+        .putInt(frame.yRowStride)
+        .putInt(frame.uvRowStride)
+        .putInt(frame.uvPixelStride)
+        .putLong(frame.timestampNs)
+        .putInt(yLength)
+        .putInt(uLength)
+        .putInt(vLength);
+    putPlane(frame.yPlane);
+    putPlane(frame.uPlane);
+    putPlane(frame.vPlane);
+    position += frameBytes;
+    frameCount++;
+  }
+
+  /** Returns the number of frames written so far. */
+  public synchronized int getFrameCount() {
+    return frameCount;
+  }
+
+  /** Flushes the recording and trims the file to the frames written. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      window.force();
+      window = null;
+      channel.truncate(position);
+    } finally {
+      file.close();
+    }
+  }
+
+  /** Maps a new window at the current position unless the current one has room for the bytes. */
+  private void ensureMapped(int bytes) throws IOException {
+    if (window == null || window.remaining() < bytes) {
+      if (window != null) {
+        window.force();
+      }
+      window =
+          channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(bytes, MAP_WINDOW_BYTES));
+    }
+  }
+
+  private void putPlane(ByteBuffer plane) {
+    int planePosition = plane.position();
+    plane.position(0);
+    window.put(plane);
+    plane.position(planePosition);
+  }
+}
@@ -0,0 +1,180 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class FixedPointColorTest {
+
+  private static final int SAMPLES = 200_000;
+
+  @Test
+  public void convertsPrimaryAndSecondaryHues() {
+    assertColor(0xffff0000, FixedPointColor.hsvToColor(0xff, 0f, 1f, 1f));
+    assertColor(0xffffff00, FixedPointColor.hsvToColor(0xff, 60f, 1f, 1f));
+    assertColor(0xff00ff00, FixedPointColor.hsvToColor(0xff, 120f, 1f, 1f));
+    assertColor(0xff00ffff, FixedPointColor.hsvToColor(0xff, 180f, 1f, 1f));
+    assertColor(0xff0000ff, FixedPointColor.hsvToColor(0xff, 240f, 1f, 1f));
+    assertColor(0xffff00ff, FixedPointColor.hsvToColor(0xff, 300f, 1f, 1f));
+  }
+
+  @Test
+  public void convertsEdgeCases() {
+    assertColor(0x80808080, FixedPointColor.hsvToColor(0x80, 200f, 0f, .5f));
+    assertColor(0x00000000, FixedPointColor.hsvToColor(0, 200f, 1f, 0f));
+    assertColor(0xffff0000, FixedPointColor.hsvToColor(0xff, 360f, 1f, 1f));
+    assertColor(0xffff0000, FixedPointColor.hsvToColor(0xff, -10f, 1f, 1f));
+    assertColor(0xffffffff, FixedPointColor.hsvToColor(0xff, 0f, -1f, 2f));
+  }
+
+  @Test
+  public void matchesFloatConversionWithinOneStep() {
+    Random random = new Random(1);
+    int exact = 0;
+    for (int i = 0; i < SAMPLES; i++) {
+      float hue = random.nextFloat() * 360f;
+      float saturation = random.nextFloat();
+      float value = random.nextFloat();
+      int expected = floatHsvToColor(hue, saturation, value);
+      int actual = FixedPointColor.hsvToColor(0xff, hue, saturation, value);
+      for (int shift = 0; shift < 32; shift += 8) {
+        int difference = ((expected >> shift) & 0xff) - ((actual >> shift) & 0xff);
+        assertTrue(hue + " " + saturation + " " + value, Math.abs(difference) <= 1);
+      }
+      if (expected == actual) {
+        exact++;
+      }
+    }
+    assertTrue("exact matches: " + exact, exact >= SAMPLES * 99 / 100);
+  }
+
+  @Test
+  public void readsBackHueSaturationAndValue() {
+    Random random = new Random(2);
+    float[] hsv = new float[3];
+    for (int i = 0; i < SAMPLES; i++) {
+      int color = random.nextInt();
+      floatColorToHsv(color, hsv);
+      assertEquals(hsv[0], FixedPointColor.hue(color), 0f);
+      assertEquals(hsv[1], FixedPointColor.saturation(color), 0f);
+      assertEquals(hsv[2], FixedPointColor.value(color), 0f);
+    }
+  }
+
+  @Test
+  public void roundTripsThroughHsv() {
+    Random random = new Random(3);
+    for (int i = 0; i < SAMPLES; i++) {
+      int color = random.nextInt() | 0xff000000;
+      int roundTrip =
+          FixedPointColor.hsvToColor(
+              0xff,
+              FixedPointColor.hue(color),
+              FixedPointColor.saturation(color),
+              FixedPointColor.value(color));
+      for (int shift = 0; shift < 24; shift += 8) {
+        int difference = ((color >> shift) & 0xff) - ((roundTrip >> shift) & 0xff);
+        assertTrue(Integer.toHexString(color), Math.abs(difference) <= 1);
+      }
+    }
+  }
+
+  private static void assertColor(int expected, int actual) {
+    assertEquals(Integer.toHexString(expected), Integer.toHexString(actual));
+  }
+
+  // The float conversion of android.graphics.Color.HSVToColor, for an opaque color.
+  private static int floatHsvToColor(float hue, float saturation, float value) {
+    float s = Math.max(0f, Math.min(1f, saturation));
+    float v = Math.max(0f, Math.min(1f, value));
+    int vi = (int) (v * 255 + .5f);
+    if (s <= .0039f) {
+      return 0xff000000 | (vi << 16) | (vi << 8) | vi;
+    }
+    float sextant = hue < 0 || hue >= 360f ? 0 : hue / 60;
+    float w = (float) Math.floor(sextant);
+    float f = sextant - w;
+    int p = (int) ((1 - s) * v * 255 + .5f);
+    int q = (int) ((1 - s * f) * v * 255 + .5f);
+    int t = (int) ((1 - s * (1 - f)) * v * 255 + .5f);
+    int r;
+    int g;
+    int b;
+    switch ((int) w) {
+      case 0:
+        r = vi;
+        g = t;
+        b = p;
+        break;
+      case 1:
+        r = q;
+        g = vi;
+        b = p;
+        break;
+      case 2:
+        r = p;
+        g = vi;
+        b = t;
+        break;
+      case 3:
+        r = p;
+        g = q;
+        b = vi;
+        break;
+      case 4:
+        r = t;
+        g = p;
+        b = vi;
+        break;
+      default:
+        r = vi;
+        g = p;
+        b = q;
+        break;
+    }
+    return 0xff000000 | (r << 16) | (g << 8) | b;
+  }
+
+  // The float conversion of android.graphics.Color.colorToHSV.
+  private static void floatColorToHsv(int color, float[] hsv) {
+    int r = (color >> 16) & 0xff;
+    int g = (color >> 8) & 0xff;
+    int b = color & 0xff;
+    int max = Math.max(r, Math.max(g, b));
+    int delta = max - Math.min(r, Math.min(g, b));
+    hsv[2] = max / 255f;
+    hsv[1] = max == 0 ? 0f : delta / (float) max;
+    if (delta == 0) {
+      hsv[0] = 0f;
+      return;
+    }
+    float h;
+    if (r == max) {
+      h = (g - b) / (float) delta;
+    } else if (g == max) {
+      h = 2 + (b - r) / (float) delta;
+    } else {
+      h = 4 + (r - g) / (float) delta;
+    }
+    h *= 60;
+    hsv[0] = h < 0 ? h + 360 : h;
+  }
+}
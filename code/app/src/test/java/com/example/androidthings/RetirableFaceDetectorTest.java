@@ -0,0 +1,118 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.example.androidthings.vision.Face;
+import com.example.androidthings.vision.FaceDetector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class RetirableFaceDetectorTest {
+
+  private final PendingDetector detector = new PendingDetector();
+  private final RetirableFaceDetector retirable = new RetirableFaceDetector(detector);
+  private int callbacks;
+
+  @Test
+  public void closesAtOnceWithoutPendingDetections() {
+    retirable.retire();
+    assertEquals(1, detector.closeCount);
+    retirable.retire();
+    assertEquals(1, detector.closeCount);
+  }
+
+  @Test
+  public void closesAfterLastPendingDetectionCallsBack() {
+    retirable.detect(null, countingCallback());
+    retirable.detect(null, countingCallback());
+    retirable.retire();
+    assertEquals(0, detector.closeCount);
+
+    detector.callbacks.get(0).onFacesDetected(Collections.<Face>emptyList());
+    assertEquals(0, detector.closeCount);
+    detector.callbacks.get(1).onDetectionFailed(new Exception());
+    assertEquals(1, detector.closeCount);
+    assertEquals(2, callbacks);
+  }
+
+  @Test
+  public void detectionThatFailsToStartIsNotPending() {
+    detector.failToStart = true;
+    try {
+      retirable.detect(null, countingCallback());
+      fail();
+    } catch (IllegalStateException expected) {
+      // The caller handles a detection that couldn't start.
+    }
+    retirable.retire();
+    assertEquals(1, detector.closeCount);
+    assertEquals(0, callbacks);
+  }
+
+  @Test
+  public void synchronousCallbackIsCountedOnce() {
+    detector.callBackAtOnce = true;
+    retirable.detect(null, countingCallback());
+    retirable.retire();
+    assertEquals(1, detector.closeCount);
+    assertEquals(1, callbacks);
+  }
+
+  private FaceDetector.Callback countingCallback() {
+    return new FaceDetector.Callback() {
+      @Override
+      public void onFacesDetected(List<Face> faces) {
+        callbacks++;
+      }
+
+      @Override
+      public void onDetectionFailed(Exception e) {
+        callbacks++;
+      }
+    };
+  }
+
+  /** Keeps the callbacks of its detections for the test to call. */
+  private static class PendingDetector implements FaceDetector {
+    final List<Callback> callbacks = new ArrayList<>();
+    boolean failToStart;
+    boolean callBackAtOnce;
+    int closeCount;
+
+    @Override
+    public void detect(Input input, Callback callback) {
+      if (failToStart) {
+        throw new IllegalStateException();
+      }
+      if (callBackAtOnce) {
+        callback.onFacesDetected(Collections.<Face>emptyList());
+      } else {
+        callbacks.add(callback);
+      }
+    }
+
+    @Override
+    public void close() {
+      closeCount++;
+    }
+  }
+}
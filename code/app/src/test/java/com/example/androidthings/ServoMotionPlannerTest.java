@@ -0,0 +1,113 @@
+package com.example.androidthings;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ServoMotionPlannerTest {
+
+  private static final float RESOLUTION = .3f;
+  private static final float MAX_SPEED = 120f;
+  private static final float MAX_ACCELERATION = 600f;
+  private static final long FRAME_NS = 80_000_000L;
+  private static final float FRAME_SECONDS = FRAME_NS / 1e9f;
+  private static final float EPSILON = 1e-3f;
+
+  private final ServoMotionPlanner planner =
+      new ServoMotionPlanner(RESOLUTION, MAX_SPEED, MAX_ACCELERATION);
+
+  @Test
+  public void firstUpdateJumpsToTarget() {
+    planner.setTarget(50f);
+    assertTrue(planner.update(0));
+    assertEquals(50.1f, planner.getAngle(), EPSILON);
+    assertFalse(planner.update(FRAME_NS));
+  }
+
+  @Test
+  public void easesIntoAndOutOfMove() {
+    planner.setTarget(50f);
+    planner.update(0);
+    planner.setTarget(12.5f);
+
+    int writes = 0;
+    float previousAngle = planner.getAngle();
+    float previousStep = 0;
+    float largestStep = 0;
+    long nowNs = 0;
+    for (int frame = 0; frame < 50 && planner.getPosition() != planner.getTarget(); frame++) {
+      nowNs += FRAME_NS;
+      if (planner.update(nowNs)) {
+        writes++;
+        float step = previousAngle - planner.getAngle();
+        assertTrue("moves away from the target", step > 0);
+        assertTrue("too fast", step <= MAX_SPEED * FRAME_SECONDS + RESOLUTION);
+        assertTrue(
+            "accelerates too hard",
+            Math.abs(step - previousStep)
+                <= MAX_ACCELERATION * FRAME_SECONDS * FRAME_SECONDS + RESOLUTION);
+        largestStep = Math.max(largestStep, step);
+        previousStep = step;
+        previousAngle = planner.getAngle();
+      }
+    }
+    assertEquals(planner.getTarget(), planner.getAngle(), 0f);
+    assertEquals(12.6f, planner.getAngle(), EPSILON);
+    assertEquals(5, writes);
+    // The first and last steps are shorter than the cruising steps.
+    assertTrue(largestStep > previousStep);
+  }
+
+  @Test
+  public void holdsSpeedOfTarget() {
+    planner.setTarget(0f);
+    planner.update(0);
+    planner.setTarget(90f, 10f);
+    long nowNs = 0;
+    for (int frame = 0; frame < 20; frame++) {
+      nowNs += FRAME_NS;
+      planner.update(nowNs);
+    }
+    assertEquals(10f * 20 * FRAME_SECONDS, planner.getPosition(), 1f);
+  }
+
+  @Test
+  public void skipsChangesBelowResolution() {
+    planner.setTarget(30f);
+    planner.update(0);
+    planner.setTarget(30.1f);
+    long nowNs = 0;
+    for (int frame = 0; frame < 10; frame++) {
+      nowNs += FRAME_NS;
+      assertFalse(planner.update(nowNs));
+    }
+  }
+
+  @Test
+  public void limitsStepAfterPause() {
+    planner.setTarget(0f);
+    planner.update(0);
+    planner.setTarget(90f);
+    planner.update(10_000_000_000L);
+    // A pause moves no further than a 100 ms step would.
+    assertEquals(MAX_ACCELERATION * .1f * .1f, planner.getPosition(), EPSILON);
+  }
+}
@@ -0,0 +1,68 @@
+package com.example.androidthings.sequences;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.example.androidthings.FlowerLEDController;
+import org.junit.Test;
+
+public class FrameTableTest {
+
+  private static final int CHECKED_FRAMES = 5000;
+
+  @Test
+  public void copiesGeneratedFramesAndWrapsAround() {
+    FrameTable table =
+        new FrameTable(
+            3,
+            2,
+            (colors, frame) -> {
+              colors[0] = frame;
+              colors[1] = -frame;
+            });
+    assertEquals(3, table.getFrameCount());
+    int[] colors = new int[2];
+    table.copyFrame(1, colors);
+    assertArrayEquals(new int[] {1, -1}, colors);
+    table.copyFrame(5, colors);
+    assertArrayEquals(new int[] {2, -2}, colors);
+  }
+
+  @Test
+  public void rainbowTableMatchesGenerator() {
+    int[] expected = new int[FlowerLEDController.LED_COUNT];
+    int[] actual = new int[FlowerLEDController.LED_COUNT];
+    for (int frame = 0; frame < CHECKED_FRAMES; frame++) {
+      RainbowSequence.generateRainbow(expected, frame);
+      RainbowSequence.RAINBOW.copyFrame(frame, actual);
+      assertArrayEquals("frame " + frame, expected, actual);
+    }
+  }
+
+  @Test
+  public void idleTableMatchesGenerator() {
+    int[] expected = new int[FlowerLEDController.LED_COUNT];
+    int[] actual = new int[FlowerLEDController.LED_COUNT];
+    for (int frame = 0; frame < CHECKED_FRAMES; frame++) {
+      IdleSequence.generateRainbowVertical(expected, IdleSequence.TOP_LED_COUNT, frame);
+      IdleSequence.RAINBOW_VERTICAL.copyFrame(frame, actual);
+      assertArrayEquals("frame " + frame, expected, actual);
+    }
+  }
+}
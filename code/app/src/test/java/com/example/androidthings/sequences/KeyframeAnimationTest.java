@@ -0,0 +1,128 @@
+package com.example.androidthings.sequences;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class KeyframeAnimationTest {
+
+  private static final int FRAME_MS = 80;
+  private static final int LED_COUNT = 4;
+
+  @Test
+  public void compilesExpression() throws IOException {
+    KeyframeAnimation animation =
+        compile(
+            "# Fades into yellow and holds it.",
+            "interruptible false",
+            "",
+            "key 0 step 1 ffffff",
+            "key 400 linear 1 ffaa00",
+            "key 2800 step 1 ffaa00");
+    assertFalse(animation.isInterruptible());
+    assertFalse(animation.isLooping());
+    assertEquals(36, animation.getFrameCount());
+    assertColors(animation, 0, 0xffffff);
+    assertColors(animation, 5, 0xffaa00);
+    assertColors(animation, 35, 0xffaa00);
+    assertEquals(1f, animation.getOpening(35), 0f);
+  }
+
+  @Test
+  public void interpolatesBetweenKeyframes() throws IOException {
+    KeyframeAnimation animation =
+        compile("key 0 step 0 000000", "key 160 linear 1 ff0000", "key 320 step .5 00ff00");
+    assertEquals(5, animation.getFrameCount());
+    assertEquals(.5f, animation.getOpening(1), 1e-6f);
+    assertColors(animation, 1, 0x800000);
+    // Step holds the previous keyframe until its own time.
+    assertColors(animation, 3, 0xff0000);
+    assertEquals(1f, animation.getOpening(3), 0f);
+    assertColors(animation, 4, 0x00ff00);
+  }
+
+  @Test
+  public void repeatsColorsAcrossLeds() throws IOException {
+    KeyframeAnimation animation = compile("key 0 step 1 ff0000 00ff00");
+    int[] colors = new int[LED_COUNT];
+    animation.copyColors(0, colors);
+    assertArrayEquals(new int[] {0xff0000, 0x00ff00, 0xff0000, 0x00ff00}, colors);
+  }
+
+  @Test
+  public void loopLeavesOutLastFrame() throws IOException {
+    KeyframeAnimation animation =
+        compile(
+            "loop true",
+            "key 0 step 0 000000",
+            "key 400 ease 1 ffffff",
+            "key 800 ease 0 000000");
+    assertTrue(animation.isLooping());
+    assertTrue(animation.isInterruptible());
+    assertEquals(10, animation.getFrameCount());
+  }
+
+  @Test
+  public void rejectsLoopThatCantBeInterrupted() {
+    assertError(
+        "must be interruptible", "loop true", "interruptible false", "key 0 step 1 ffffff");
+  }
+
+  @Test
+  public void reportsLineOfError() {
+    assertError(
+        "Line 2: keyframes must be in order of time",
+        "key 0 step 1 ffffff",
+        "key 0 step 1 ffffff");
+    assertError("Line 1: the first keyframe must be at 0 ms", "key 80 step 1 ffffff");
+    assertError("Line 3: unknown keyword spin", "key 0 step 1 ffffff", "", "spin");
+    assertError("No keyframes", "# empty");
+    assertError("Line 1: colors must be 6 hex digits, was -fffff", "key 0 step 1 -fffff");
+    assertError("Line 1: colors must be 6 hex digits, was +00000", "key 0 step 1 +00000");
+    assertError("Line 2: colors must be 6 hex digits, was ffaa0g", "", "key 0 step 1 ffaa0g");
+  }
+
+  private static KeyframeAnimation compile(String... lines) throws IOException {
+    return KeyframeAnimation.compile(
+        new StringReader(String.join("\n", lines)), FRAME_MS, LED_COUNT);
+  }
+
+  private static void assertColors(KeyframeAnimation animation, int frame, int color) {
+    int[] colors = new int[LED_COUNT];
+    animation.copyColors(frame, colors);
+    for (int i = 0; i < LED_COUNT; i++) {
+      assertEquals("frame " + frame, Integer.toHexString(color), Integer.toHexString(colors[i]));
+    }
+  }
+
+  private static void assertError(String message, String... lines) {
+    try {
+      compile(lines);
+      fail("Compiled " + String.join("; ", lines));
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(message));
+    }
+  }
+}
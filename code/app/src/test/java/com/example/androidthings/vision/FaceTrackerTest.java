@@ -0,0 +1,71 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.example.androidthings.Flower.State;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class FaceTrackerTest {
+
+  private final FaceTracker tracker =
+      new FaceTracker(4, 5, 2, new WeightedDistanceSelector(0, 320, 0, 160, 120, .5, 0));
+
+  @Test
+  public void undetectedFrameKeepsLatestResult() {
+    Face face = face(1, 140, .1f);
+    tracker.update(0, Collections.singletonList(face));
+    tracker.update(1, null);
+    assertEquals(1, tracker.getCurrentFaceCount());
+    assertSame(face, tracker.getPriorityFace());
+  }
+
+  @Test
+  public void emptyDetectionClearsPriorityFace() {
+    tracker.update(0, Collections.singletonList(face(1, 140, .1f)));
+    tracker.update(1, Collections.<Face>emptyList());
+    assertEquals(0, tracker.getCurrentFaceCount());
+    assertNull(tracker.getPriorityFace());
+    assertEquals(State.DETECTING, tracker.getPriorityExpression());
+  }
+
+  @Test
+  public void priorityFaceIsClosestToCenter() {
+    tracker.update(0, Arrays.asList(face(1, 20, .1f), face(2, 140, .1f), face(3, 280, .1f)));
+    assertEquals(3, tracker.getCurrentFaceCount());
+    assertEquals(2, tracker.getPriorityId());
+  }
+
+  @Test
+  public void newFaceHoldsExpressionForDwellFrames() {
+    tracker.update(0, Collections.singletonList(face(1, 140, .9f)));
+    assertEquals(State.DETECTING, tracker.getPriorityExpression());
+    tracker.update(1, Collections.singletonList(face(1, 140, .9f)));
+    assertEquals(State.DETECTING, tracker.getPriorityExpression());
+    tracker.update(2, Collections.singletonList(face(1, 140, .9f)));
+    assertEquals(State.SMILE, tracker.getPriorityExpression());
+  }
+
+  private static Face face(int trackingId, int left, float smilingProbability) {
+    return new Face(trackingId, left, 100, left + 40, 140, smilingProbability, .9f, .9f);
+  }
+}
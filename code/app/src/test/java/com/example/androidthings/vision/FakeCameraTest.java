@@ -0,0 +1,62 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FakeCameraTest {
+
+  @Test
+  public void producesFrameCountFramesPacedByFrameRate() {
+    FakeCamera camera = new FakeCamera(16, 8, 20, 3);
+    YuvFrame frame = new YuvFrame();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(camera.next(frame));
+      assertEquals(16, frame.getWidth());
+      assertEquals(8, frame.getHeight());
+      assertEquals(i * 50_000_000L, frame.getTimestampNs());
+    }
+    assertFalse(camera.next(frame));
+  }
+
+  @Test
+  public void framesHaveFullPlanes() {
+    FakeCamera camera = new FakeCamera(16, 8, 30, 1);
+    YuvFrame frame = new YuvFrame();
+    assertTrue(camera.next(frame));
+    assertEquals(16 * 8, frame.getYPlane().remaining());
+    assertEquals(2, frame.getUvPixelStride());
+    // Interleaved chroma: each plane spans all but the other plane's last byte.
+    assertEquals(16 * 8 / 2 - 1, frame.getUPlane().remaining());
+    assertEquals(16 * 8 / 2 - 1, frame.getVPlane().remaining());
+  }
+
+  @Test
+  public void stopsProducingWhenClosed() {
+    FakeCamera camera = new FakeCamera(16, 8, 30, -1);
+    YuvFrame frame = new YuvFrame();
+    for (int i = 0; i < 100; i++) {
+      assertTrue(camera.next(frame));
+    }
+    camera.close();
+    assertFalse(camera.next(frame));
+  }
+}
@@ -0,0 +1,153 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.example.androidthings.Flower.State;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class PriorityArbiterTest {
+
+  private static final long FRAME_NS = 33_000_000L;
+  private static final long STALE_NS = 1_000_000_000L;
+
+  private final RecordingListener listener = new RecordingListener();
+  private final PriorityArbiter arbiter = new PriorityArbiter(3, listener);
+  private final FaceTracker[] trackers = {tracker(), tracker(), tracker()};
+  private long frameId;
+
+  @Test
+  public void idleOnlyWhenNoCameraSeesAFace() {
+    report(0, 0, face(1, 40));
+    report(1, FRAME_NS);
+    assertEquals(State.DETECTING, listener.state);
+    assertEquals(0, arbiter.getPriorityCamera());
+
+    report(0, 2 * FRAME_NS);
+    assertEquals(State.IDLE, listener.state);
+    assertEquals(PriorityArbiter.NO_CAMERA, arbiter.getPriorityCamera());
+    assertNull(listener.priorityFace);
+  }
+
+  @Test
+  public void priorityStaysWithCameraWhileItSeesTheFace() {
+    Face small = face(1, 20);
+    report(0, 0, small);
+    report(1, FRAME_NS, face(2, 80));
+    assertEquals(0, arbiter.getPriorityCamera());
+    assertSame(small, listener.priorityFace);
+
+    report(0, 2 * FRAME_NS, small);
+    report(1, 3 * FRAME_NS, face(2, 80));
+    assertEquals(0, arbiter.getPriorityCamera());
+  }
+
+  @Test
+  public void largestFaceTakesOverWhenPriorityFaceLeaves() {
+    report(0, 0, face(1, 20));
+    report(1, FRAME_NS, face(2, 40));
+    Face large = face(3, 80);
+    report(2, 2 * FRAME_NS, large);
+    assertEquals(0, arbiter.getPriorityCamera());
+
+    report(0, 3 * FRAME_NS);
+    assertEquals(2, arbiter.getPriorityCamera());
+    assertEquals(2, listener.priorityCamera);
+    assertSame(large, listener.priorityFace);
+    assertEquals(State.DETECTING, listener.state);
+  }
+
+  @Test
+  public void staleCameraIsIgnored() {
+    report(0, 0, face(1, 40));
+    report(1, STALE_NS - 1);
+    assertEquals(0, arbiter.getPriorityCamera());
+    assertEquals(State.DETECTING, listener.state);
+
+    report(1, STALE_NS);
+    assertEquals(PriorityArbiter.NO_CAMERA, arbiter.getPriorityCamera());
+    assertEquals(State.IDLE, listener.state);
+  }
+
+  @Test
+  public void staleFaceCountDoesNotKeepFlowerDetecting() {
+    // A face too small to be a priority face still counts as seen while its camera is fresh.
+    trackers[0] =
+        new FaceTracker(4, 5, 0, new WeightedDistanceSelector(0, 320, 10_000, 160, 120, .5, 0));
+    report(0, 0, face(1, 20), face(2, 20));
+    report(1, FRAME_NS);
+    assertEquals(PriorityArbiter.NO_CAMERA, arbiter.getPriorityCamera());
+    assertEquals(State.DETECTING, listener.state);
+
+    report(1, STALE_NS + FRAME_NS);
+    assertEquals(State.IDLE, listener.state);
+  }
+
+  @Test
+  public void priorityExpressionIsPassedOn() {
+    Face smiling = new Face(1, 100, 100, 140, 140, .9f, .9f, .9f);
+    report(0, 0, smiling);
+    assertEquals(State.DETECTING, listener.state);
+    assertEquals(State.SMILE, listener.expression);
+    assertEquals(State.SMILE, listener.changes.get(listener.changes.size() - 1).intValue());
+  }
+
+  private void report(int camera, long nowNs, Face... faces) {
+    List<Face> detected = new ArrayList<>();
+    Collections.addAll(detected, faces);
+    trackers[camera].update(frameId++, detected);
+    arbiter.update(camera, trackers[camera], nowNs);
+  }
+
+  private static FaceTracker tracker() {
+    return new FaceTracker(4, 5, 0, new WeightedDistanceSelector(0, 320, 0, 160, 120, .5, 0));
+  }
+
+  /** Returns a square face of the given size that doesn't smile or wink. */
+  private static Face face(int trackingId, int size) {
+    return new Face(trackingId, 100, 100, 100 + size, 100 + size, .1f, .9f, .9f);
+  }
+
+  private static class RecordingListener implements PriorityArbiter.StateListener {
+    final List<Integer> changes = new ArrayList<>();
+    int state = State.UNDEFINED;
+    int expression = State.UNDEFINED;
+    int priorityCamera = PriorityArbiter.NO_CAMERA;
+    Face priorityFace;
+
+    @Override
+    public void onStateChanged(int state) {
+      changes.add(state);
+    }
+
+    @Override
+    public void onDecision(int state, int expression, int priorityCamera, Face priorityFace) {
+      this.state = state;
+      this.expression = expression;
+      this.priorityCamera = priorityCamera;
+      this.priorityFace = priorityFace;
+      PriorityArbiter.StateListener.super.onDecision(
+          state, expression, priorityCamera, priorityFace);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package com.example.androidthings.vision;
+
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.androidthings.Flower.State;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Drives the tracking, priority and state logic with scripted detections at full speed, the way
+ * the camera pipeline does for every frame, and checks the priority face and the states.
+ */
+public class ScriptedFaceDetectorTest {
+
+  // The tracking setup of VideoProcessor.
+  private static final int IMAGE_WIDTH = 320;
+  private static final int IMAGE_HEIGHT = 240;
+  private static final int BOUND_LEFT = IMAGE_WIDTH / 3 - 20;
+  private static final int BOUND_RIGHT = IMAGE_WIDTH / 3 * 2 + 20;
+  private static final int SMALL_BOX_LIMIT = 3000;
+  private static final double WEIGHT = .6;
+  private static final int MAX_TRACKED_FACES = 32;
+  private static final int EVICTION_FRAMES = 90;
+  private static final int DWELL_FRAMES = 10;
+
+  private static final int FACE_COUNT = 3;
+  private static final int SCRIPT_LENGTH = 600;
+  private static final int FRAME_COUNT = 60_000;
+  // Lower bound on the frames per second the logic runs at, far below what it does on a JVM.
+  private static final int MIN_FPS = 1000;
+
+  @Test
+  public void picksPriorityFaceOfEveryFrame() {
+    ScriptedFaceDetector detector =
+        ScriptedFaceDetector.walkingFaces(FACE_COUNT, SCRIPT_LENGTH, IMAGE_WIDTH, IMAGE_HEIGHT);
+    FaceTracker tracker = newTracker();
+    int expectedPriorityId = PriorityFaceSelector.NO_PRIORITY;
+    int framesWithPriorityFace = 0;
+    for (int frame = 0; frame < FRAME_COUNT; frame++) {
+      List<Face> faces = detect(detector);
+      tracker.update(frame, faces);
+      expectedPriorityId = selectPriorityId(faces, expectedPriorityId);
+      assertEquals("frame " + frame, expectedPriorityId, tracker.getPriorityId());
+      assertEquals(FACE_COUNT, tracker.getCurrentFaceCount());
+      if (expectedPriorityId != PriorityFaceSelector.NO_PRIORITY) {
+        assertNotNull(tracker.getPriorityFace());
+        assertEquals(expectedPriorityId, tracker.getPriorityFace().getTrackingId());
+        framesWithPriorityFace++;
+      }
+    }
+    assertTrue(framesWithPriorityFace > FRAME_COUNT / 2);
+  }
+
+  @Test
+  public void holdsExpressionsAndNeverIdles() {
+    long startNs = System.nanoTime();
+    List<int[]> decisions = run();
+    long elapsedNs = System.nanoTime() - startNs;
+    assertTrue(elapsedNs + " ns", elapsedNs < FRAME_COUNT * 1_000_000_000L / MIN_FPS);
+    List<int[]> rerun = run();
+
+    boolean smiled = false;
+    boolean winked = false;
+    // Frames from which the priority face has been the same, and its expression seen unchanged.
+    int priorityStart = 0;
+    int expressionStart = 0;
+    int heldExpressions = 0;
+    for (int frame = 0; frame < decisions.size(); frame++) {
+      int state = decisions.get(frame)[0];
+      int priorityId = decisions.get(frame)[1];
+      assertArrayEquals("frame " + frame, decisions.get(frame), rerun.get(frame));
+      assertTrue("frame " + frame, state != State.IDLE);
+      smiled |= state == State.SMILE;
+      winked |= state == State.WINK;
+      if (frame == 0 || priorityId != decisions.get(frame - 1)[1]) {
+        priorityStart = frame;
+        expressionStart = frame;
+      } else if (state != decisions.get(frame - 1)[0]) {
+        // A face holds an expression it was seen taking on for the dwell time.
+        if (expressionStart > priorityStart) {
+          assertTrue("frame " + frame, frame - expressionStart >= DWELL_FRAMES);
+          heldExpressions++;
+        }
+        expressionStart = frame;
+      }
+    }
+    assertTrue(smiled);
+    assertTrue(winked);
+    assertTrue(heldExpressions > 0);
+  }
+
+  /** Returns the expression the flower is set to after each frame, or IDLE, and the priority id. */
+  private static List<int[]> run() {
+    ScriptedFaceDetector detector =
+        ScriptedFaceDetector.walkingFaces(FACE_COUNT, SCRIPT_LENGTH, IMAGE_WIDTH, IMAGE_HEIGHT);
+    FaceTracker tracker = newTracker();
+    List<int[]> decisions = new ArrayList<>(FRAME_COUNT);
+    PriorityArbiter arbiter =
+        new PriorityArbiter(
+            1,
+            new PriorityArbiter.StateListener() {
+              @Override
+              public void onStateChanged(int state) {}
+
+              @Override
+              public void onDecision(
+                  int state, int expression, int priorityCamera, Face priorityFace) {
+                decisions.add(
+                    new int[] {
+                      state == State.IDLE ? State.IDLE : expression,
+                      priorityFace == null
+                          ? PriorityFaceSelector.NO_PRIORITY
+                          : priorityFace.getTrackingId()
+                    });
+              }
+            });
+    for (int frame = 0; frame < FRAME_COUNT; frame++) {
+      tracker.update(frame, detect(detector));
+      arbiter.update(0, tracker, frame * 33_000_000L);
+    }
+    assertEquals(FRAME_COUNT, decisions.size());
+    return decisions;
+  }
+
+  private static List<Face> detect(ScriptedFaceDetector detector) {
+    List<List<Face>> result = new ArrayList<>(1);
+    // The scripted detector ignores the image and calls back at once.
+    detector.detect(
+        null,
+        new FaceDetector.Callback() {
+          @Override
+          public void onFacesDetected(List<Face> faces) {
+            result.add(faces);
+          }
+
+          @Override
+          public void onDetectionFailed(Exception e) {
+            throw new AssertionError(e);
+          }
+        });
+    assertEquals(1, result.size());
+    return result.get(0);
+  }
+
+  private static FaceTracker newTracker() {
+    return new FaceTracker(
+        MAX_TRACKED_FACES,
+        EVICTION_FRAMES,
+        DWELL_FRAMES,
+        new WeightedDistanceSelector(
+            BOUND_LEFT,
+            BOUND_RIGHT,
+            SMALL_BOX_LIMIT,
+            IMAGE_WIDTH / 2,
+            IMAGE_HEIGHT / 2,
+            WEIGHT,
+            0));
+  }
+
+  /**
+   * Picks the priority face by its definition: a lone face, or else the current priority face
+   * while it qualifies, or else the qualifying face closest to the center by weighted distance.
+   */
+  private static int selectPriorityId(List<Face> faces, int currentId) {
+    if (faces.size() == 1) {
+      return faces.get(0).getTrackingId();
+    }
+    int closestId = PriorityFaceSelector.NO_PRIORITY;
+    double closestDistance = Double.MAX_VALUE;
+    for (Face face : faces) {
+      if (!qualifies(face)) {
+        continue;
+      }
+      if (face.getTrackingId() == currentId) {
+        return currentId;
+      }
+      double dx = face.getCenterX() - IMAGE_WIDTH / 2;
+      double dy = face.getCenterY() - IMAGE_HEIGHT / 2;
+      double distance = WEIGHT * dx * dx + (1 - WEIGHT) * dy * dy;
+      if (distance < closestDistance) {
+        closestDistance = distance;
+        closestId = face.getTrackingId();
+      }
+    }
+    return closestId;
+  }
+
+  private static boolean qualifies(Face face) {
+    return face.getWidth() * face.getHeight() > SMALL_BOX_LIMIT
+        && face.getCenterX() > BOUND_LEFT
+        && face.getCenterX() < BOUND_RIGHT;
+  }
+}